@@ -16,4 +16,31 @@ dependencies {
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+// Benchmarks JMH: ./gradlew jmh  (resultados en build/reports/jmh/results.json)
+val jmh by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+val jmhVersion = "1.37"
+
+dependencies {
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:$jmhVersion")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Ejecuta los benchmarks JMH y exporta los resultados en JSON."
+    dependsOn(tasks.named("jmhClasses"))
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+
+    val results = layout.buildDirectory.file("reports/jmh/results.json")
+    doFirst { results.get().asFile.parentFile.mkdirs() }
+    args("-rf", "json", "-rff", results.get().asFile.absolutePath)
+    // filtro opcional: ./gradlew jmh -Pjmh.include=Registry
+    project.findProperty("jmh.include")?.let { args(it.toString()) }
+}
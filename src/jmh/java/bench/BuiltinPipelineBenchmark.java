@@ -0,0 +1,51 @@
+package bench;
+
+import infra.BuiltinStage;
+import infra.ProcessManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Misma tubería con el filtro final como etapa integrada en la JVM o como
+ * proceso {@code bash -lc}, sobre entradas de distinto tamaño.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuiltinPipelineBenchmark {
+    private static final int TIMEOUT = 60_000;
+
+    @Param({"true", "false"})
+    public boolean builtins;
+
+    @Param({"grep -c ab", "wc -l", "tail -n 10", "head -n 10"})
+    public String filter;
+
+    @Param({"1048576", "67108864"})
+    public long bytes;
+
+    private List<List<String>> pipeline;
+
+    @Setup
+    public void setup() {
+        BuiltinStage.setEnabled(builtins);
+        pipeline = List.of(
+                List.of("head -c " + bytes + " /dev/urandom | base64 -w 100"),
+                List.of(filter));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BuiltinStage.setEnabled(true);
+    }
+
+    @Benchmark
+    public String pipeline() {
+        return ProcessManager.buildPipeline(pipeline, TIMEOUT, null, "/dev/null", null);
+    }
+}
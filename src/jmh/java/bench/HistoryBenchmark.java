@@ -0,0 +1,54 @@
+package bench;
+
+import domain.Job;
+import infra.ActivityLogger;
+import infra.HistoryAppender;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput de escritura del historial: el appender con cada política de
+ * fsync y la ruta pública de ActivityLogger.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HistoryBenchmark {
+    @Param({"NONE", "INTERVAL", "EVERY_BATCH"})
+    public HistoryAppender.FsyncPolicy policy;
+
+    private File file;
+    private HistoryAppender appender;
+    private Job job;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = Files.createTempFile("history-bench", ".log").toFile();
+        appender = new HistoryAppender(file, policy, 1000, 8192);
+        job = new Job(12345, LocalDateTime.now(), "echo benchmark");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        appender.shutdown();
+        file.delete();
+    }
+
+    @Benchmark
+    public void append() {
+        appender.append(job.toString());
+    }
+
+    @Benchmark
+    public void logInfoInHistory() {
+        ActivityLogger.logInfoInHistory(job);
+    }
+}
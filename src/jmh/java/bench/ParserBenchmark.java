@@ -0,0 +1,88 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import parser.CommandLine;
+import parser.Parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara el lexer de una pasada (con y sin caché) con el análisis anterior
+ * basado en split(" ") y split("\\|").
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    @Param({
+            "run ls -la",
+            "ejecuta grep foo IN in.txt OUT out.txt ERR null TIMEOUT 2000",
+            "pipe cat data.csv | grep -v x | sort | uniq -c | head -n 10 TIMEOUT 5000"
+    })
+    public String line;
+
+    @Setup
+    public void warmCache() {
+        Parser.parseCached(line);
+    }
+
+    @Benchmark
+    public CommandLine lexer() {
+        return Parser.parse(line);
+    }
+
+    @Benchmark
+    public CommandLine lexerCached() {
+        return Parser.parseCached(line);
+    }
+
+    @Benchmark
+    public Object legacySplit() {
+        return legacyParse(line);
+    }
+
+    // Reproduce el análisis original de CommandController.handle + execEjecuta
+    private static Object legacyParse(String command) {
+        String[] args = command.split(" ");
+        if (args.length > 1) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        List<String> argList = Arrays.asList(args);
+        List<String> cmd = new ArrayList<>(List.of("bash", "-lc"));
+        String fileIn = null, fileOut = null, fileErr = null;
+        int timeout = 5000;
+
+        for (int i = 0; i < argList.size(); ) {
+            String arg = argList.get(i);
+            if (arg.equalsIgnoreCase("IN") || arg.equalsIgnoreCase("OUT") ||
+                    arg.equalsIgnoreCase("ERR") || arg.equalsIgnoreCase("TIMEOUT")) {
+                if (i < argList.size() - 1) {
+                    String path = argList.get(i + 1).equalsIgnoreCase("null") ? null : argList.get(i + 1);
+                    switch (arg) {
+                        case "IN" -> fileIn = path;
+                        case "OUT" -> fileOut = path;
+                        case "ERR" -> fileErr = path;
+                        case "TIMEOUT" -> timeout = path != null ? Integer.parseInt(path) : 5000;
+                    }
+                }
+                i += 2;
+            } else {
+                cmd.add(arg);
+                i++;
+            }
+        }
+
+        String[] commandsToPipe = String.join(" ", cmd).split("\\|");
+        List<List<String>> pipeCommand = new ArrayList<>();
+        for (String c : commandsToPipe) {
+            pipeCommand.add(Arrays.asList(c.split(" ")));
+        }
+        return new Object[]{pipeCommand, fileIn, fileOut, fileErr, timeout};
+    }
+}
@@ -0,0 +1,45 @@
+package bench;
+
+import infra.ProcessManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput de buildPipeline variando el número de etapas y el volumen de
+ * datos que atraviesa la tubería.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+    private static final int TIMEOUT = 60_000;
+
+    @Param({"2", "4", "8"})
+    public int stages;
+
+    @Param({"1024", "1048576", "67108864"})
+    public long bytes;
+
+    private List<List<String>> pipeline;
+
+    @Setup
+    public void setup() {
+        pipeline = new ArrayList<>();
+        pipeline.add(List.of("head -c " + bytes + " /dev/zero"));
+        for (int i = 1; i < stages - 1; i++) {
+            pipeline.add(List.of("cat"));
+        }
+        pipeline.add(List.of("wc -c"));
+    }
+
+    @Benchmark
+    public String buildPipeline() {
+        return ProcessManager.buildPipeline(pipeline, TIMEOUT, null, "/dev/null", null);
+    }
+}
@@ -0,0 +1,51 @@
+package bench;
+
+import domain.Job;
+import infra.ProcessRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de listar y buscar jobs con tablas de distintos tamaños. Los jobs son
+ * ficticios (PIDs fuera de rango) y no se lanza ningún proceso.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegistryBenchmark {
+    private static final long BASE_PID = 10_000_000L;
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int jobs;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < jobs; i++) {
+            ProcessRegistry.addJob(new Job(BASE_PID + i, now.plusNanos(i), "sleep " + i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (int i = 0; i < jobs; i++) {
+            ProcessRegistry.removeJob(BASE_PID + i);
+        }
+    }
+
+    @Benchmark
+    public String execJobs() {
+        return ProcessRegistry.execJobs();
+    }
+
+    @Benchmark
+    public boolean findById() {
+        return ProcessRegistry.findById(BASE_PID + ThreadLocalRandom.current().nextInt(jobs));
+    }
+}
@@ -0,0 +1,49 @@
+package bench;
+
+import infra.Platform;
+import infra.ProcessManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencia desde el lanzamiento hasta la salida de un comando trivial por
+ * cada una de las rutas de ProcessManager.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpawnBenchmark {
+    private static final int TIMEOUT = 10_000;
+
+    private List<String> cmd;
+
+    @Setup
+    public void setup() {
+        cmd = new ArrayList<>(Platform.wrapForShell());
+        cmd.add("true");
+    }
+
+    @Benchmark
+    public String execCommandWithTimeout() {
+        return ProcessManager.execCommandWithTimeout(cmd, TIMEOUT, null, null, null);
+    }
+
+    @Benchmark
+    public String execCommandWithTimeoutUsingGobbler() {
+        return ProcessManager.execCommandWithTimeoutUsingGobbler(cmd, TIMEOUT);
+    }
+
+    @Benchmark
+    public void runBackgroundCommand() {
+        String result = ProcessManager.runBackgroundCommand(cmd, "true");
+        // "BG PID=<pid> ..." : se espera a la salida para medir lanzamiento + ejecución
+        long pid = Long.parseLong(result.substring("BG PID=".length(), result.indexOf(' ', "BG PID=".length())));
+        ProcessHandle.of(pid).ifPresent(ph -> ph.onExit().join());
+    }
+}
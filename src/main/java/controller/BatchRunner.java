@@ -0,0 +1,159 @@
+package controller;
+
+import infra.ProcessManager;
+import infra.Session;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Ejecuta listas de comandos (ficheros con {@code source} o stdin en modo
+ * {@code --batch}) con hasta N líneas en paralelo. Una línea {@code wait}
+ * actúa de barrera: no se lanza nada posterior hasta que terminen las anteriores.
+ */
+public class BatchRunner {
+    public static final String BARRIER = "wait";
+    // USER_HZ en prácticamente todos los kernels Linux
+    private static final long CLOCK_TICKS = 100;
+
+    private final int parallelism;
+
+    public BatchRunner(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    private record LineResult(int lineNumber, String command, Integer exitCode, long millis, String output) {}
+
+    public String runFile(Path file) {
+        try (BufferedReader br = Files.newBufferedReader(file)) {
+            return run(br);
+        } catch (IOException e) {
+            return "Error: No se pudo leer el fichero " + file + ": " + e.getMessage();
+        }
+    }
+
+    /**
+     * Lee las líneas del lector y las ejecuta respetando el límite de
+     * paralelismo y las barreras. Devuelve el resumen final.
+     */
+    public String run(BufferedReader reader) throws IOException {
+        // Las líneas van en sus propios hilos virtuales: sus gobblers usan el
+        // ExecutionEngine y no deben competir con ellas por los mismos permisos
+        try (ExecutorService lines = Executors.newVirtualThreadPerTaskExecutor()) {
+            return run(reader, lines);
+        }
+    }
+
+    private String run(BufferedReader reader, ExecutorService lines) throws IOException {
+        Semaphore slots = new Semaphore(parallelism);
+        List<Future<LineResult>> pending = new ArrayList<>();
+        List<LineResult> results = new ArrayList<>();
+
+        long cpuBefore = childCpuMillis();
+        long start = System.nanoTime();
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String cmd = line.trim();
+            if (cmd.isEmpty() || cmd.startsWith("#")) continue;
+
+            if (cmd.equalsIgnoreCase(BARRIER)) {
+                collect(pending, results);
+                continue;
+            }
+            if (cmd.equalsIgnoreCase("exit")) break;
+
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            final int n = lineNumber;
+            pending.add(lines.submit(Session.propagate(() -> {
+                try {
+                    return execLine(n, cmd);
+                } finally {
+                    slots.release();
+                }
+            })));
+        }
+        collect(pending, results);
+
+        long wallMillis = (System.nanoTime() - start) / 1_000_000;
+        long cpuMillis = childCpuMillis() - cpuBefore;
+        return summary(results, wallMillis, cpuBefore < 0 ? -1 : cpuMillis);
+    }
+
+    private static LineResult execLine(int n, String cmd) {
+        ProcessManager.clearLastExitCode();
+        long t0 = System.nanoTime();
+        String output = CommandController.handle(cmd);
+        long millis = (System.nanoTime() - t0) / 1_000_000;
+        return new LineResult(n, cmd, ProcessManager.getLastExitCode(), millis, output);
+    }
+
+    private static void collect(List<Future<LineResult>> pending, List<LineResult> results) {
+        for (Future<LineResult> f : pending) {
+            try {
+                LineResult r = f.get();
+                Session.current().out().println("[" + r.lineNumber() + "] " + r.output());
+                results.add(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                Session.current().out().println("Error en batch: " + e.getCause());
+            }
+        }
+        pending.clear();
+    }
+
+    private String summary(List<LineResult> results, long wallMillis, long cpuMillis) {
+        long failed = results.stream().filter(r -> r.exitCode() != null && r.exitCode() != 0).count();
+        double seconds = Math.max(wallMillis, 1) / 1000.0;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("--- Resumen batch (j=").append(parallelism).append(") ---\n");
+        sb.append(String.format("%-8s%-8s%-10s%s%n", "LINEA", "EXIT", "MS", "COMANDO"));
+        for (LineResult r : results) {
+            sb.append(String.format("%-8d%-8s%-10d%s%n",
+                    r.lineNumber(),
+                    r.exitCode() == null ? "-" : String.valueOf(r.exitCode()),
+                    r.millis(),
+                    r.command()));
+        }
+        sb.append(String.format("Lineas: %d  Fallidas: %d  Throughput: %.2f lineas/s%n",
+                results.size(), failed, results.size() / seconds));
+        sb.append(String.format("Tiempo real: %d ms  CPU acumulada (hijos): %s",
+                wallMillis, cpuMillis < 0 ? "n/d" : cpuMillis + " ms"));
+        return sb.toString();
+    }
+
+    /**
+     * CPU (usuario + sistema) de los hijos ya recogidos por la JVM, leída de
+     * /proc/self/stat (campos cutime y cstime). Devuelve -1 fuera de Linux.
+     */
+    private static long childCpuMillis() {
+        try {
+            String stat = Files.readString(Path.of("/proc/self/stat"));
+            // el nombre del proceso va entre paréntesis y puede contener espacios
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            long ticks = Long.parseLong(fields[13]) + Long.parseLong(fields[14]);
+            return ticks * 1000 / CLOCK_TICKS;
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+}
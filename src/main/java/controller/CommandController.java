@@ -1,129 +1,455 @@
 package controller;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
+import domain.Priority;
+import domain.ResourceLimits;
+import infra.BuiltinStage;
+import infra.CommandHistory;
+import infra.EnvSnapshot;
+import infra.ExecutionEngine;
+import infra.JobEvents;
+import infra.JobScheduler;
+import infra.LogStore;
+import infra.OutputCapture;
 import infra.Platform;
+import infra.ProcSampler;
 import infra.ProcessManager;
 import infra.ProcessRegistry;
+import infra.ResourceLimiter;
+import infra.ResultCache;
+import infra.Session;
+import infra.ShellPool;
+import infra.Trace;
+import infra.TraceEvents;
+import parser.CommandLine;
+import parser.Parser;
+import parser.Word;
 import util.NumberParsing;
 
 public class CommandController {
 
-    private static final File logsFile = new File("history\\mi_interprete_historial.log");
     private static int timeout = 5000;
 
+    private static final int DEFAULT_HISTORY_ENTRIES = 20;
+    private static final int DEFAULT_WATCH_SECONDS = 60;
+    private static final int WATCH_QUEUE_CAPACITY = 1024;
+
+    /**
+     * Ejecuta la línea y la registra en el historial con su duración y código
+     * de salida. {@code !n} vuelve a ejecutar la entrada n del historial.
+     */
     public static String handle(String command) {
-        String[] args = command.split(" ");
-        String commandName = args[0];
-        if (args.length > 1) {
-            args = Arrays.copyOfRange(args, 1, args.length);
-        } else {
-            args = null;
+        if (command.startsWith("!") && NumberParsing.tryParseToInt(command.substring(1))) {
+            int n = Integer.parseInt(command.substring(1));
+            Optional<String> previous = CommandHistory.getCommand(n);
+            if (previous.isEmpty()) {
+                return "Error: No existe la entrada " + n + " en el historial";
+            }
+            Session.current().out().println(previous.get());
+            return handle(previous.get());
+        }
+
+        ProcessManager.clearLastExitCode();
+        long start = System.currentTimeMillis();
+        TraceEvents.CommandEvent event = new TraceEvents.CommandEvent();
+        Trace.Span span = Trace.span(Trace.Phase.COMMAND, event).command(command);
+        String result = dispatch(command);
+        Integer exit = ProcessManager.getLastExitCode();
+        event.exitCode = exit == null ? -1 : exit;
+        span.end();
+        CommandHistory.record(command, start, System.currentTimeMillis() - start, ProcessManager.getLastExitCode());
+        return result;
+    }
+
+    private static String dispatch(String command) {
+        CommandLine line;
+        Trace.Span parse = Trace.span(Trace.Phase.PARSE, new TraceEvents.ParseEvent()).command(command);
+        try {
+            line = Parser.parseCached(command);
+        } catch (IllegalArgumentException e) {
+            return "Error: " + e.getMessage();
+        } finally {
+            parse.end();
         }
+        if (line.isEmpty()) return "";
+
+        String[] args = line.argsArray();
 
-        return switch (commandName) {
-            case "ejecuta" -> execEjecuta(args, false);
-            case "run" -> execRun(args);
-            case "runbg" -> execRunBG(args);
-            case "jobs" -> ProcessRegistry.execJobs();
+        return switch (line.name()) {
+            case "ejecuta" -> captured(command, line, () -> execEjecuta(line, false));
+            case "run" -> captured(command, line, () -> execRun(line));
+            case "runbg" -> execRunBG(line);
+            case "jobs" -> execJobs(args);
+            case "queue" -> execQueue(args);
             case "kill" -> execKill(args);
             case "details" -> execDetails(args);
             case "getenv" -> execGetEnv();
             case "getDirectory" -> execGetDirectory();
+            case "cd" -> execCd(args);
+            case "set", "export" -> execSet(args);
+            case "unset" -> execUnset(args);
             case "timeout" -> execTimeout(args);
-            case "history" -> execHistory();
-            case "pipe" -> execEjecuta(args, true);
+            case "history" -> execHistory(args);
+            case "pipe" -> captured(command, line, () -> execEjecuta(line, true));
+            case "last" -> execLast(args);
+            case "cache" -> execCache(args);
+            case "trace" -> execTrace(args);
+            case "fastspawn" -> execFastSpawn(args);
+            case "builtins" -> execBuiltins(args);
+            case "limits" -> ResourceLimiter.status();
+            case "engine" -> ExecutionEngine.metrics();
+            case "source" -> execSource(args);
+            case "parallel" -> execParallel(line);
+            case "stats" -> execStats(args);
+            case "logs" -> execLogs(args);
             case "exit" -> execExit();
             default -> "Comando no reconocido";
         };
     }
 
-    public static String execEjecuta(String[] command, boolean pipe) {
-        List<String> args = Arrays.asList(command);
-        List<String> cmd = new ArrayList<>(Platform.wrapForShell());
-        String fileIn = null, fileOut = null, fileErr = null;
-
-        for (int i = 0; i < args.size(); ) {
-            String arg = args.get(i);
-
-            if (arg.equalsIgnoreCase("IN") ||
-                    arg.equalsIgnoreCase("OUT") ||
-                    arg.equalsIgnoreCase("ERR") ||
-                    arg.equalsIgnoreCase("TIMEOUT")) {
-                if (i < args.size() - 1) {
-                    String path = args.get(i+1).equalsIgnoreCase("null") ? null : args.get(i+1);
-                    switch (arg) {
-                        case "IN" -> fileIn = path;
-                        case "OUT" -> fileOut = path;
-                        case "ERR" -> fileErr = path;
-                        case "TIMEOUT" -> timeout = path != null && NumberParsing.tryParseToInt(path) ? Integer.parseInt(path) : 5000;
-                    }
+    // Los comandos en primer plano guardan su salida para poder consultarla con last
+    private static String captured(String command, CommandLine line, Supplier<String> exec) {
+        if (line.background() || !OutputCapture.isEnabled()) return exec.get();
+        OutputCapture.begin(command);
+        try {
+            return exec.get();
+        } finally {
+            OutputCapture.end(ProcessManager.getLastExitCode());
+        }
+    }
+
+    public static String execEjecuta(CommandLine line, boolean pipe) {
+        if (line.stages().isEmpty()) {
+            return "Error: No se ha introducido ningún comando para ejecutar";
+        }
+        if (line.background()) {
+            return execRunBG(line);
+        }
+        if (line.hasOption("--cache")) {
+            // el resultado depende del comando y de la entrada, no de a dónde va la salida
+            String command = String.join(" | ", line.scripts())
+                    + (pipe ? " (pipe)" : "")
+                    + (line.pipefail() ? " PIPEFAIL" : "")
+                    + (line.in() != null ? " IN " + line.in() : "");
+            return ResultCache.run(command, line.in(), line.out(), line.err(),
+                    (out, err) -> execEjecuta(line, pipe, out, err));
+        }
+        return execEjecuta(line, pipe, line.out(), line.err());
+    }
+
+    private static String execEjecuta(CommandLine line, boolean pipe, String fileOut, String fileErr) {
+        int commandTimeout = line.timeoutMs() != null ? line.timeoutMs() : timeout;
+        ResourceLimits limits;
+        try {
+            limits = limitsOf(line);
+        } catch (IllegalArgumentException e) {
+            return "Error: " + e.getMessage();
+        }
+
+        if (pipe || line.isPipeline()) {
+            if (!limits.isEmpty()) {
+                return "Error: Los límites de recursos no se aplican a tuberías; lánzala con runbg como un único job";
+            }
+            List<List<String>> pipeCommand = line.scripts().stream()
+                    .map(List::of)
+                    .toList();
+
+            return ProcessManager.buildPipeline(pipeCommand, commandTimeout, line.in(), fileOut, fileErr, line.pipefail());
+        } else {
+            return ProcessManager.execCommandWithTimeout(shellCommand(line.script(0)), commandTimeout, line.in(), fileOut, fileErr, limits);
+        }
+    }
+
+    /**
+     * {@code cache [list|clear|invalidate <texto>]}: estadísticas y gestión de
+     * la caché de {@code ejecuta --cache}.
+     */
+    public static String execCache(String[] args) {
+        if (args == null) return ResultCache.stats();
+        return switch (args[0]) {
+            case "list" -> ResultCache.list();
+            case "clear" -> "Entradas eliminadas: " + ResultCache.invalidate(null);
+            case "invalidate" -> args.length == 2
+                    ? "Entradas eliminadas: " + ResultCache.invalidate(args[1])
+                    : "Error: Uso: cache invalidate <texto>";
+            default -> "Error: Uso: cache [list|clear|invalidate <texto>]";
+        };
+    }
+
+    public static String execTrace(String[] args) {
+        if (args == null) {
+            return (Trace.isOn() ? "Traza activa\n" : "Traza inactiva\n") + Trace.summary();
+        }
+        return switch (args[0]) {
+            case "on" -> Trace.start();
+            case "off" -> Trace.stop();
+            case "dump" -> args.length == 2
+                    ? Trace.dump(Session.current().resolve(args[1]).toPath())
+                    : "Error: Uso: trace dump <fichero.jfr>";
+            default -> "Error: Uso: trace [on|off|dump <fichero.jfr>]";
+        };
+    }
+
+    public static String execRun(CommandLine line) {
+        if (line.stages().isEmpty()) {
+            return "Error: No se ha introducido ningún comando para ejecutar";
+        }
+        if (line.background()) {
+            return execRunBG(line);
+        }
+        // con redirecciones no hay nada que mostrar por terminal: se ejecuta como ejecuta
+        if (line.in() != null || line.out() != null || line.err() != null) {
+            return execEjecuta(line, false);
+        }
+
+        int commandTimeout = line.timeoutMs() != null ? line.timeoutMs() : timeout;
+        return ProcessManager.execCommandWithTimeoutUsingGobbler(shellCommand(String.join(" | ", line.scripts())), commandTimeout);
+    }
+
+    public static String execRunBG(CommandLine line) {
+        if (line.stages().isEmpty()) {
+            return "Error: No se ha introducido ningún comando para ejecutar";
+        }
+
+        // una tubería en background se lanza como un único script de shell
+        String commandExecuted = String.join(" | ", line.scripts());
+        long timeoutMs = line.timeoutMs() != null ? line.timeoutMs() : 0;
+
+        Priority priority;
+        try {
+            priority = Priority.fromLabel(line.option("--prio", Priority.NORMAL.getLabel()));
+        } catch (IllegalArgumentException e) {
+            return "Error: " + e.getMessage();
+        }
+        String niceValue = line.option("--nice", "0");
+        int nice = NumberParsing.tryParseToInt(niceValue) ? Integer.parseInt(niceValue) : Integer.MIN_VALUE;
+        if (nice < -20 || nice > 19) {
+            return "Error: --nice debe ser un entero entre -20 y 19";
+        }
+
+        ResourceLimits limits;
+        try {
+            limits = limitsOf(line);
+        } catch (IllegalArgumentException e) {
+            return "Error: " + e.getMessage();
+        }
+
+        return JobScheduler.submit(shellCommand(commandExecuted), commandExecuted, timeoutMs, priority, nice, limits);
+    }
+
+    // --cpu=segundos --mem=tamaño --nofile=N --nproc=N
+    private static ResourceLimits limitsOf(CommandLine line) {
+        return ResourceLimits.of(line.option("--cpu", null), line.option("--mem", null),
+                line.option("--nofile", null), line.option("--nproc", null));
+    }
+
+    public static String execJobs(String[] args) {
+        if (args == null) return ProcessRegistry.execJobs();
+        if (args.length == 1 && args[0].equals("--long")) return ProcessRegistry.execJobsLong();
+        if (args.length == 1 && args[0].equals("--events")) return JobEvents.stats();
+        if (args[0].equals("--watch") && args.length <= 2) {
+            if (args.length == 1) return watchJobs(DEFAULT_WATCH_SECONDS);
+            if (NumberParsing.tryParseToInt(args[1]) && Integer.parseInt(args[1]) > 0) {
+                return watchJobs(Integer.parseInt(args[1]));
+            }
+        }
+        return "Error: Uso: jobs [--long | --events | --watch [segundos]]";
+    }
+
+    /**
+     * Muestra la tabla de jobs y después cada arranque y fin según llega por
+     * el bus de eventos, sin volver a recorrer la tabla. Termina al pasar los
+     * segundos indicados o cuando no queda ningún job vivo ni en cola.
+     */
+    private static String watchJobs(int seconds) {
+        PrintStream out = Session.current().out();
+        // suscribirse antes de pintar la tabla para no perder lo que ocurra entre medias
+        try (JobEvents.Subscription events = JobEvents.subscribe("watch-" + Session.current().getId(), WATCH_QUEUE_CAPACITY)) {
+            out.println(ProcessRegistry.execJobs());
+            out.println(String.format("%-10s%-16s%-10s%-8s%s", "HORA", "EVENTO", "PID", "SALIDA", "COMANDO"));
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            long dropped = 0;
+            while (System.nanoTime() < deadline) {
+                JobEvents.Event e = events.poll(Math.min(500_000_000L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (e != null) {
+                    out.println(e.format());
+                } else if (!hasActiveJobs()) {
+                    return "No quedan jobs activos";
+                }
+                if (events.getDropped() > dropped) {
+                    out.println("(" + (events.getDropped() - dropped) + " eventos perdidos)");
+                    dropped = events.getDropped();
                 }
-                i+=2;
-            } else {
-                cmd.add(arg);
-                i++;
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "";
+    }
+
+    private static boolean hasActiveJobs() {
+        return !JobScheduler.queued().isEmpty()
+                || ProcessRegistry.getJobs().stream().anyMatch(j -> !j.getEstado().isFinal());
+    }
+
+    public static String execQueue(String[] args) {
+        if (args == null) {
+            return JobScheduler.status();
         }
+        if (args.length == 2 && args[0].equals("max") && NumberParsing.tryParseToInt(args[1])
+                && Integer.parseInt(args[1]) > 0) {
+            JobScheduler.setMaxRunning(Integer.parseInt(args[1]));
+            return JobScheduler.status();
+        }
+        return "Error: Uso: queue [max N]";
+    }
 
-        if (pipe) {
-            String commandStr = String.join(" ", cmd);
-            String[] commandsToPipe = commandStr.split("\\|");
-            List<List<String>> pipeCommand = new ArrayList<>();
+    /**
+     * {@code parallel [-j N] [-u] <plantilla> :: <fichero> [TIMEOUT ms]}: ejecuta
+     * la plantilla por cada línea no vacía del fichero. Con {@code -u} la
+     * salida se muestra según terminan los elementos en vez de en orden.
+     */
+    public static String execParallel(CommandLine line) {
+        final String usage = "Error: Uso: parallel [-j N] [-u] <plantilla> :: <fichero> [TIMEOUT ms]";
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < line.stages().size(); i++) {
+            if (i > 0) words.add(new Word("|", false));
+            words.addAll(line.stages().get(i));
+        }
 
-            for (String c : commandsToPipe) {
-                pipeCommand.add(Arrays.asList(c.split(" ")));
+        int jobs = Runtime.getRuntime().availableProcessors();
+        boolean ordered = true;
+        int i = 0;
+        for (; i < words.size() && !words.get(i).quoted(); i++) {
+            String w = words.get(i).text();
+            if (w.equals("-j") && i + 1 < words.size() && NumberParsing.tryParseToInt(words.get(i + 1).text())) {
+                jobs = Integer.parseInt(words.get(++i).text());
+            } else if (w.equals("-u") || w.equals("--unordered")) {
+                ordered = false;
+            } else {
+                break;
             }
+        }
 
-            return ProcessManager.buildPipeline(pipeCommand, timeout, fileIn, fileOut, fileErr);
-        } else {
-            return ProcessManager.execCommandWithTimeout(cmd, timeout, fileIn, fileOut, fileErr);
+        List<Word> template = new ArrayList<>();
+        int sep = -1;
+        for (; i < words.size(); i++) {
+            Word w = words.get(i);
+            if (!w.quoted() && w.text().equals("::")) {
+                sep = i;
+                break;
+            }
+            template.add(w);
         }
+        if (template.isEmpty() || sep < 0 || sep != words.size() - 2) {
+            return usage;
+        }
+
+        List<String> items;
+        Path file = Session.current().resolve(words.get(sep + 1).text()).toPath();
+        try {
+            items = Files.readAllLines(file).stream()
+                    .map(String::strip)
+                    .filter(l -> !l.isEmpty())
+                    .toList();
+        } catch (IOException e) {
+            return "Error: No se pudo leer el fichero " + file + ": " + e.getMessage();
+        }
+
+        int itemTimeout = line.timeoutMs() != null ? line.timeoutMs() : timeout;
+        return new ParallelRunner(jobs, itemTimeout, ordered)
+                .run(template, items, CommandController::shellCommand);
     }
 
-    public static String execRun(String[] command) {
-        List<String> args = Arrays.asList(command);
-        List<String> cmd = new ArrayList<>(Platform.wrapForShell());
+    /**
+     * {@code last [n] [--grep patrón] | last --list | last on|off}: muestra la
+     * salida guardada del n-ésimo comando anterior (1 por defecto). Con
+     * {@code --grep} y sin n busca en todas las capturas.
+     */
+    public static String execLast(String[] args) {
+        final String usage = "Error: Uso: last [n] [--grep patrón] | last --list | last on|off";
+        Integer n = null;
+        Pattern grep = null;
 
-        for (int i = 0; i < args.size(); ) {
-            String arg = args.get(i);
+        if (args != null && args.length == 1 && (args[0].equals("on") || args[0].equals("off"))) {
+            OutputCapture.setEnabled(args[0].equals("on"));
+            return "Captura de salida " + (OutputCapture.isEnabled() ? "activada" : "desactivada");
+        }
+        if (args != null && args.length == 1 && args[0].equals("--list")) {
+            StringBuilder sb = new StringBuilder(String.format("%-6s%-10s%-6s%-10s%-9s%s%n",
+                    "N", "HORA", "EXIT", "BYTES", "DONDE", "COMANDO"));
+            List<OutputCapture.Recording> all = OutputCapture.recordings();
+            for (int i = all.size() - 1; i >= 0; i--) sb.append(all.get(i)).append('\n');
+            return sb.toString();
+        }
 
-            if (arg.equalsIgnoreCase("TIMEOUT")) {
-                if (i < args.size() - 1) {
-                    String path = args.get(i+1).equalsIgnoreCase("null") ? null : args.get(i+1);
-                    if (arg.equals("TIMEOUT")) {
-                        timeout = path != null && NumberParsing.tryParseToInt(path) ? Integer.parseInt(path) : 5000;
-                    }
+        for (int i = 0; args != null && i < args.length; i++) {
+            if (args[i].equals("--grep") && i + 1 < args.length) {
+                try {
+                    grep = Pattern.compile(args[++i]);
+                } catch (PatternSyntaxException e) {
+                    return "Error: Patrón no válido: " + e.getDescription();
                 }
-                i+=2;
+            } else if (n == null && NumberParsing.tryParseToInt(args[i])) {
+                n = Integer.parseInt(args[i]);
             } else {
-                cmd.add(arg);
-                i++;
+                return usage;
             }
         }
 
-        return ProcessManager.execCommandWithTimeoutUsingGobbler(cmd, timeout);
+        PrintStream out = Session.current().out();
+        try {
+            if (n == null && grep != null) {
+                int matches = 0;
+                for (OutputCapture.Recording r : OutputCapture.recordings()) {
+                    matches += OutputCapture.print(r, grep, "[" + r.getId() + "] ", out);
+                }
+                return "--- " + matches + " coincidencias ---";
+            }
+
+            Optional<OutputCapture.Recording> recording = OutputCapture.get(n == null ? 1 : n);
+            if (recording.isEmpty()) {
+                return "Error: No hay salida guardada para el comando " + (n == null ? 1 : n);
+            }
+            OutputCapture.Recording r = recording.get();
+            OutputCapture.print(r, grep, "", out);
+            return "--- [" + r.getId() + "] " + r.getCommand() + " exit=" + (r.getExitCode() == null ? "-" : r.getExitCode())
+                    + " " + r.getBytes() + " bytes ---";
+        } catch (IOException e) {
+            return "Error: No se pudo leer la salida guardada: " + e.getMessage();
+        }
     }
 
-    public static String execRunBG(String[] command) {
+    private static List<String> shellCommand(String script) {
         List<String> cmd = new ArrayList<>(Platform.wrapForShell());
-        cmd.addAll(Arrays.asList(command));
-        String commandExecuted = String.join(" ", command);
-
-        return ProcessManager.runBackgroundCommand(cmd, commandExecuted);
+        cmd.add(script);
+        return cmd;
     }
 
     public static String execDetails(String[] command) {
-        if (command.length != 1 || !NumberParsing.tryParseToInt(command[0])) {
-            return "Error: Solo se acepta un parámetro de tipo entero para el PID";
+        if (command == null || !Arrays.stream(command).allMatch(NumberParsing::tryParseToInt)) {
+            return "Error: Solo se aceptan PIDs enteros";
         }
 
-        long pid = Long.parseLong(command[0]);
-        return getProcessInfo(pid);
+        return ProcessRegistry.describeProcesses(Arrays.stream(command).map(Long::parseLong).toList());
     }
 
     public static String execKill(String[] command) {
+        // Q<n> cancela un job que todavía está en la cola
+        if (command != null && command.length == 1 && command[0].matches("Q\\d+")) {
+            return JobScheduler.cancel(Long.parseLong(command[0].substring(1)))
+                    ? "El job " + command[0] + " se ha retirado de la cola"
+                    : "Error: No hay ningún job " + command[0] + " en la cola";
+        }
         if (command == null || command.length != 1 || !NumberParsing.tryParseToInt(command[0])) {
             return "Error: El parámetro debe ser un PID";
         }
@@ -143,15 +469,70 @@ public class CommandController {
     }
 
     public static String execGetEnv() {
-        Map<String, String> env = System.getenv();
-        env.keySet().stream()
-                .sorted()
-                .forEach(k -> System.out.println(k + "=" + env.get(k)));
+        Session.current().getEnv().toMap()
+                .forEach((k, v) -> Session.current().out().println(k + "=" + v));
         return "";
     }
 
     public static String execGetDirectory() {
-        return "user.dir = " + System.getProperty("user.dir");
+        return "user.dir = " + Session.current().getDirectory();
+    }
+
+    /**
+     * {@code cd [directorio]}: cambia el directorio de la sesión. Sin argumento
+     * vuelve a HOME (USERPROFILE en Windows).
+     */
+    public static String execCd(String[] args) {
+        if (args != null && args.length > 1) {
+            return "Error: Uso: cd [directorio]";
+        }
+        Session session = Session.current();
+        String target = args != null ? args[0]
+                : session.getEnv().get(Platform.isWindows() ? "USERPROFILE" : "HOME");
+        if (target == null) {
+            return "Error: No hay directorio personal definido";
+        }
+
+        Path dir = session.resolve(target).toPath().normalize();
+        if (!Files.isDirectory(dir)) {
+            return "Error: No existe el directorio " + dir;
+        }
+        session.setDirectory(dir);
+        return dir.toString();
+    }
+
+    /**
+     * {@code set|export [NOMBRE=valor ...]}: sin argumentos lista el entorno de
+     * la sesión; con ellos lo modifica para los comandos que se lancen después.
+     */
+    public static String execSet(String[] args) {
+        if (args == null) {
+            return execGetEnv();
+        }
+        Session session = Session.current();
+        EnvSnapshot env = session.getEnv();
+        for (String assignment : args) {
+            int eq = assignment.indexOf('=');
+            if (eq <= 0) {
+                return "Error: Se esperaba NOMBRE=valor: " + assignment;
+            }
+            env = env.with(assignment.substring(0, eq), assignment.substring(eq + 1));
+        }
+        session.setEnv(env);
+        return "";
+    }
+
+    public static String execUnset(String[] args) {
+        if (args == null) {
+            return "Error: Uso: unset NOMBRE [NOMBRE...]";
+        }
+        Session session = Session.current();
+        EnvSnapshot env = session.getEnv();
+        for (String name : args) {
+            env = env.without(name);
+        }
+        session.setEnv(env);
+        return "";
     }
 
     public static String execTimeout(String[] command) {
@@ -166,9 +547,150 @@ public class CommandController {
         return "Error: El comando timeout sólo acepta 1 parámetro de tipo entero";
     }
 
-    public static String execHistory() {
-        // TODO implementar historial de comandos
-        return logsFile.getAbsolutePath();
+    /**
+     * {@code builtins [on|off]}: etapas grep/head/tail/wc/tee dentro de la JVM en las tuberías.
+     */
+    public static String execBuiltins(String[] args) {
+        if (args != null) {
+            switch (args[0]) {
+                case "on" -> BuiltinStage.setEnabled(true);
+                case "off" -> BuiltinStage.setEnabled(false);
+                default -> { return "Error: Uso: builtins [on|off]"; }
+            }
+        }
+        return "builtins=" + (BuiltinStage.isEnabled() ? "on" : "off");
+    }
+
+    public static String execFastSpawn(String[] command) {
+        if (command == null) {
+            return "fastspawn=" + (ShellPool.isEnabled() ? "on" : "off");
+        }
+
+        switch (command[0]) {
+            case "on" -> {
+                if (Platform.isWindows()) return "Error: fastspawn solo está disponible en Linux";
+                ShellPool.setEnabled(true);
+                ShellPool.get();
+                return "fastspawn=on";
+            }
+            case "off" -> {
+                ShellPool.setEnabled(false);
+                return "fastspawn=off";
+            }
+            case "bench" -> {
+                if (Platform.isWindows()) return "Error: fastspawn solo está disponible en Linux";
+                int n = command.length > 1 && NumberParsing.tryParseToInt(command[1]) ? Integer.parseInt(command[1]) : 100;
+                return ProcessManager.benchmarkShellPool("true", n);
+            }
+            default -> {
+                return "Uso: fastspawn [on|off|bench [n]]";
+            }
+        }
+    }
+
+    public static String execSource(String[] command) {
+        if (command == null) {
+            return "Uso: source [-j N] <fichero>";
+        }
+
+        int parallelism = 1;
+        int i = 0;
+        if (command.length == 3 && command[0].equals("-j") && NumberParsing.tryParseToInt(command[1])) {
+            parallelism = Integer.parseInt(command[1]);
+            i = 2;
+        }
+        if (command.length != i + 1) {
+            return "Uso: source [-j N] <fichero>";
+        }
+
+        return new BatchRunner(parallelism).runFile(Session.current().resolve(command[i]).toPath());
+    }
+
+    public static String execStats(String[] command) {
+        if (Platform.isWindows()) {
+            return "Error: stats solo está disponible en Linux";
+        }
+        ProcSampler.start();
+
+        if (command == null) {
+            return ProcSampler.render();
+        }
+
+        if (command[0].equals("interval") && command.length == 2 && NumberParsing.tryParseToInt(command[1])) {
+            ProcSampler.setIntervalMs(Integer.parseInt(command[1]));
+            return "intervalo=" + ProcSampler.getIntervalMs() + "ms";
+        }
+
+        if (command[0].equals("--watch")) {
+            int refreshes = command.length > 1 && NumberParsing.tryParseToInt(command[1]) ? Integer.parseInt(command[1]) : 10;
+            for (int i = 0; i < refreshes; i++) {
+                // limpiar pantalla y volver al inicio (ANSI)
+                Session.current().out().print("\033[H\033[2J");
+                Session.current().out().println(ProcSampler.render());
+                try {
+                    Thread.sleep(ProcSampler.getIntervalMs());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return "";
+        }
+
+        return "Uso: stats [--watch [n] | interval <ms>]";
+    }
+
+    public static String execLogs(String[] command) {
+        if (command == null || !NumberParsing.tryParseToInt(command[0])) {
+            return "Uso: logs <pid> [--tail N] [--follow] [--err]";
+        }
+
+        long pid = Long.parseLong(command[0]);
+        int lines = 10;
+        boolean follow = false;
+        String stream = LogStore.OUT;
+
+        for (int i = 1; i < command.length; i++) {
+            switch (command[i]) {
+                case "--tail" -> {
+                    if (i + 1 >= command.length || !NumberParsing.tryParseToInt(command[i + 1])) {
+                        return "Error: --tail necesita un número de líneas";
+                    }
+                    lines = Integer.parseInt(command[++i]);
+                }
+                case "--follow" -> follow = true;
+                case "--err" -> stream = LogStore.ERR;
+                default -> {
+                    return "Uso: logs <pid> [--tail N] [--follow] [--err]";
+                }
+            }
+        }
+
+        if (follow) {
+            LogStore.follow(pid, stream, lines, Session.current().out());
+            return "";
+        }
+        return LogStore.tail(pid, stream, lines);
+    }
+
+    public static String execHistory(String[] command) {
+        if (command == null) {
+            return CommandHistory.last(DEFAULT_HISTORY_ENTRIES);
+        }
+
+        if (command[0].equals("-n") && command.length == 2 && NumberParsing.tryParseToInt(command[1])) {
+            return CommandHistory.last(Integer.parseInt(command[1]));
+        }
+
+        if (command[0].equals("search") && command.length > 1) {
+            return CommandHistory.search(String.join(" ", Arrays.copyOfRange(command, 1, command.length)));
+        }
+
+        if (command[0].equals("path")) {
+            return CommandHistory.getFile().getAbsolutePath();
+        }
+
+        return "Uso: history [-n N | search <texto|^prefijo> | path]";
     }
 
     public static String execExit() {
@@ -0,0 +1,140 @@
+package controller;
+
+import infra.ProcessManager;
+import infra.Session;
+import parser.CommandLine;
+import parser.Word;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Ejecuta la misma plantilla de comando sobre cada elemento de una lista con
+ * hasta N procesos a la vez. La salida de cada elemento se guarda aparte y se
+ * muestra entera, en el orden de entrada o según van terminando.
+ */
+public class ParallelRunner {
+    public static final String PLACEHOLDER = "{}";
+
+    private final int parallelism;
+    private final int timeout;
+    private final boolean ordered;
+
+    public ParallelRunner(int parallelism, int timeout, boolean ordered) {
+        this.parallelism = Math.max(1, parallelism);
+        this.timeout = timeout;
+        this.ordered = ordered;
+    }
+
+    private record ItemResult(int index, String item, int exitCode, long millis, byte[] output) {}
+
+    /**
+     * Sustituye cada {} de la plantilla por el elemento entrecomillado; si no
+     * hay ninguno, el elemento se añade al final. Se sustituye sobre las
+     * partes de cada palabra ya analizada: dentro de comillas ("{}") se
+     * cierran sus comillas alrededor del elemento, que nunca queda suelto.
+     */
+    public static String expand(List<Word> template, String item) {
+        String quoted = CommandLine.quote(item);
+        StringBuilder sb = new StringBuilder();
+        boolean found = false;
+        for (Word w : template) {
+            if (!sb.isEmpty()) sb.append(' ');
+            for (Word.Segment s : w.segments()) {
+                String[] pieces = s.source().split(Pattern.quote(PLACEHOLDER), -1);
+                for (int i = 0; i < pieces.length; i++) {
+                    if (i > 0) sb.append(quoted);
+                    // una pieza vacía entre comillas sobra junto al elemento, salvo si la parte es solo ""
+                    if (!pieces[i].isEmpty() || s.quote() == Word.Quote.NONE || pieces.length == 1) {
+                        sb.append(new Word.Segment(pieces[i], s.quote()).shell());
+                    }
+                }
+                found |= pieces.length > 1;
+            }
+        }
+        if (!found) sb.append(' ').append(quoted);
+        return sb.toString();
+    }
+
+    public String run(List<Word> template, List<String> items, Function<String, List<String>> shell) {
+        Semaphore slots = new Semaphore(parallelism);
+        List<ItemResult> results = new ArrayList<>();
+        PrintStream out = Session.current().out();
+        long start = System.nanoTime();
+
+        // cada elemento en su propio hilo virtual, como las líneas de BatchRunner
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletionService<ItemResult> done = new ExecutorCompletionService<>(pool);
+            List<Future<ItemResult>> futures = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                final int index = i;
+                final String item = items.get(i);
+                futures.add(done.submit(Session.propagate(() -> {
+                    slots.acquire();
+                    try {
+                        return execItem(index, item, shell.apply(expand(template, item)));
+                    } finally {
+                        slots.release();
+                    }
+                })));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    ItemResult r = ordered ? futures.get(i).get() : done.take().get();
+                    out.write(r.output(), 0, r.output().length);
+                    out.flush();
+                    results.add(r);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    out.println("Error en parallel: " + e.getCause());
+                }
+            }
+        }
+
+        long wallMillis = (System.nanoTime() - start) / 1_000_000;
+        return summary(results, wallMillis);
+    }
+
+    private ItemResult execItem(int index, String item, List<String> cmd) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long t0 = System.nanoTime();
+        int exit = ProcessManager.execCaptured(cmd, timeout, buffer);
+        long millis = (System.nanoTime() - t0) / 1_000_000;
+        return new ItemResult(index, item, exit, millis, buffer.toByteArray());
+    }
+
+    private String summary(List<ItemResult> results, long wallMillis) {
+        List<ItemResult> failed = results.stream()
+                .filter(r -> r.exitCode() != 0)
+                .sorted((a, b) -> Integer.compare(a.index(), b.index()))
+                .toList();
+        long timeouts = failed.stream().filter(r -> r.exitCode() == ProcessManager.EXIT_TIMEOUT).count();
+        long totalMillis = results.stream().mapToLong(ItemResult::millis).sum();
+        long maxMillis = results.stream().mapToLong(ItemResult::millis).max().orElse(0);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("--- Resumen parallel (j=").append(parallelism).append(", timeout=").append(timeout).append(") ---\n");
+        for (ItemResult r : failed) {
+            sb.append(String.format("FALLO #%-5d exit=%-5d %6d ms  %s%n", r.index() + 1, r.exitCode(), r.millis(), r.item()));
+        }
+        sb.append(String.format("Elementos: %d  Correctos: %d  Fallidos: %d (timeouts: %d)%n",
+                results.size(), results.size() - failed.size(), failed.size(), timeouts));
+        sb.append(String.format("Tiempo real: %d ms  Suma: %d ms  Media: %d ms  Máx: %d ms",
+                wallMillis, totalMillis, results.isEmpty() ? 0 : totalMillis / results.size(), maxMillis));
+        return sb.toString();
+    }
+}
@@ -1,17 +1,34 @@
 package domain;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 
 public class Job {
     private final long PID;
     private final LocalDateTime inicio;
     private final String cmd;
-    private boolean estado;
+    // Instante de arranque según el SO; distingue el proceso de otro que reutilice el PID
+    private final Instant startInstant;
+
+    // Estado cacheado: se actualiza una sola vez desde Process.onExit()
+    private volatile JobState estado = JobState.RUNNING;
+    private volatile int exitCode = -1;
+    private volatile LocalDateTime fin;
+    // Motivo que se registrará cuando el proceso termine (timeout, kill...)
+    private volatile JobState causaFin = JobState.EXITED;
+    private volatile ResourceLimits limits = ResourceLimits.NONE;
+    // Límite que provocó el final del job (cpu, memoria...), o null
+    private volatile String limiteExcedido;
 
     public Job(long PID, LocalDateTime inicio, String cmd) {
+        this(PID, inicio, cmd, null);
+    }
+
+    public Job(long PID, LocalDateTime inicio, String cmd, Instant startInstant) {
         this.PID = PID;
         this.inicio = inicio;
         this.cmd = cmd;
+        this.startInstant = startInstant;
     }
 
     public LocalDateTime getInicio() {
@@ -30,17 +47,89 @@ public class Job {
         return cmd;
     }
 
-    public boolean getEstado() {
-        return ProcessHandle.of(this.PID).isPresent();
+    public Instant getStartInstant() {
+        return startInstant;
+    }
+
+    /**
+     * Indica si el handle corresponde a este job y no a otro proceso que haya
+     * reutilizado el PID. Sin instante registrado solo se compara el PID.
+     */
+    public boolean matches(ProcessHandle ph) {
+        if (ph.pid() != PID) return false;
+        if (startInstant == null) return true;
+        return ph.info().startInstant()
+                .map(i -> i.toEpochMilli() == startInstant.toEpochMilli())
+                .orElse(false);
+    }
+
+    public JobState getEstado() {
+        return estado;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public LocalDateTime getFin() {
+        return fin;
+    }
+
+    public JobState getCausaFin() {
+        return causaFin;
+    }
+
+    public void setCausaFin(JobState causaFin) {
+        this.causaFin = causaFin;
+    }
+
+    public ResourceLimits getLimits() {
+        return limits;
+    }
+
+    public void setLimits(ResourceLimits limits) {
+        this.limits = limits;
+    }
+
+    public String getLimiteExcedido() {
+        return limiteExcedido;
+    }
+
+    public void setLimiteExcedido(String limiteExcedido) {
+        this.limiteExcedido = limiteExcedido;
+    }
+
+    public String getLimitsLabel() {
+        return limiteExcedido == null ? limits.toString() : limits + " [excedido: " + limiteExcedido + "]";
+    }
+
+    public boolean isAlive() {
+        return !estado.isFinal();
+    }
+
+    /**
+     * Registra el final del proceso. Solo la primera llamada tiene efecto,
+     * de modo que el estado final no se sobrescribe.
+     */
+    public synchronized boolean finish(JobState state, int exitCode) {
+        if (estado.isFinal()) {
+            return false;
+        }
+        this.exitCode = exitCode;
+        this.fin = LocalDateTime.now();
+        this.estado = state;
+        return true;
     }
 
     @Override
     public String toString() {
-        return String.format("%-20d%-20s%-20s%-20s",
+        return String.format("%-20d%-20s%-20s%-20s%-10s%s",
                 this.getPID(),
                 this.getCmd(),
                 this.getHoraInicio(),
-                (this.getEstado() ? "VIVO" : "MUERTO")
+                this.getEstado().getLabel(),
+                (this.getEstado().isFinal() ? String.valueOf(this.getExitCode()) : "-"),
+                this.getLimitsLabel()
         );
     }
 }
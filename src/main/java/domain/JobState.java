@@ -0,0 +1,25 @@
+package domain;
+
+public enum JobState {
+    QUEUED("EN COLA"),
+    RUNNING("VIVO"),
+    EXITED("MUERTO"),
+    TIMED_OUT("TIMEOUT"),
+    KILLED("MATADO"),
+    // al final: el diario guarda el ordinal del estado
+    LIMIT_EXCEEDED("LÍMITE");
+
+    private final String label;
+
+    JobState(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public boolean isFinal() {
+        return this != QUEUED && this != RUNNING;
+    }
+}
@@ -0,0 +1,24 @@
+package domain;
+
+public enum Priority {
+    HIGH("alta"),
+    NORMAL("normal"),
+    LOW("baja");
+
+    private final String label;
+
+    Priority(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static Priority fromLabel(String label) {
+        for (Priority p : values()) {
+            if (p.label.equalsIgnoreCase(label)) return p;
+        }
+        throw new IllegalArgumentException("Prioridad no válida: " + label + " (alta, normal o baja)");
+    }
+}
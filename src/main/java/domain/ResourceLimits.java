@@ -0,0 +1,75 @@
+package domain;
+
+import java.util.Locale;
+
+/**
+ * Límites de recursos de un job. Un campo null significa sin límite.
+ *
+ * @param cpuSeconds  tiempo de CPU máximo (--cpu=segundos)
+ * @param memoryBytes memoria máxima (--mem=512M): RSS con cgroup v2, espacio de
+ *                    direcciones con ulimit
+ * @param openFiles   descriptores abiertos (--nofile=N)
+ * @param processes   procesos (--nproc=N): del job con cgroup v2, del usuario con ulimit
+ */
+public record ResourceLimits(Long cpuSeconds, Long memoryBytes, Long openFiles, Long processes) {
+    public static final ResourceLimits NONE = new ResourceLimits(null, null, null, null);
+
+    /**
+     * Construye los límites a partir de los valores de las opciones; null si
+     * no se indicó la opción.
+     */
+    public static ResourceLimits of(String cpu, String mem, String nofile, String nproc) {
+        return new ResourceLimits(
+                cpu == null ? null : positive("--cpu", cpu),
+                mem == null ? null : parseSize(mem),
+                nofile == null ? null : positive("--nofile", nofile),
+                nproc == null ? null : positive("--nproc", nproc));
+    }
+
+    public boolean isEmpty() {
+        return cpuSeconds == null && memoryBytes == null && openFiles == null && processes == null;
+    }
+
+    /**
+     * Tamaño en bytes con sufijo opcional K, M o G (potencias de 1024).
+     */
+    public static long parseSize(String value) {
+        String v = value.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (v.endsWith("K")) unit = 1024L;
+        else if (v.endsWith("M")) unit = 1024L * 1024;
+        else if (v.endsWith("G")) unit = 1024L * 1024 * 1024;
+        if (unit > 1) v = v.substring(0, v.length() - 1);
+        try {
+            return positive("--mem", v) * unit;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("--mem debe ser un tamaño positivo (p. ej. 512M): " + value);
+        }
+    }
+
+    private static long positive(String option, String value) {
+        try {
+            long v = Long.parseLong(value);
+            if (v > 0) return v;
+        } catch (NumberFormatException ignored) {}
+        throw new IllegalArgumentException(option + " debe ser un número positivo: " + value);
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes % (1024L * 1024 * 1024) == 0) return bytes / (1024L * 1024 * 1024) + "G";
+        if (bytes % (1024L * 1024) == 0) return bytes / (1024L * 1024) + "M";
+        if (bytes % 1024 == 0) return bytes / 1024 + "K";
+        return Long.toString(bytes);
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) return "-";
+        StringBuilder sb = new StringBuilder();
+        if (cpuSeconds != null) sb.append("cpu=").append(cpuSeconds).append("s ");
+        if (memoryBytes != null) sb.append("mem=").append(formatSize(memoryBytes)).append(' ');
+        if (openFiles != null) sb.append("nofile=").append(openFiles).append(' ');
+        if (processes != null) sb.append("nproc=").append(processes).append(' ');
+        return sb.toString().trim();
+    }
+}
@@ -2,40 +2,64 @@ package infra;
 
 import domain.Job;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
 
 public class ActivityLogger {
     // Files
     private static final File processHistory = new File("history" + File.separator + "cmd_history.log");
 
-    public static void logInfoInHistory(Job j) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(processHistory, true))) {
-            bw.write(j.toString());
-            bw.newLine();
-            bw.flush();
-        } catch (IOException e) {
-            System.out.println("Error al abrir el archivo de historial: " + e.getMessage());
-        }
+    // Un único appender para todo el proceso; se vacía al apagar la JVM
+    private static final HistoryAppender historyAppender = HistoryAppender.fromSystemProperties(processHistory);
+
+    // El historial es un suscriptor más del bus de jobs: escribe fuera del hilo que lanza o reapa
+    private static final JobEvents.Subscription events = JobEvents.subscribe("historial", 4096);
+    private static volatile boolean running = true;
+
+    static {
+        Thread.ofVirtual().name("history-events").start(ActivityLogger::consume);
+        Runtime.getRuntime().addShutdownHook(new Thread(ActivityLogger::shutdown, "history-appender-shutdown"));
     }
 
-    public static String createLogForCommand(ProcessBuilder pb) {
-        LocalDateTime launchDate = LocalDateTime.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd_HHmmss");
+    /**
+     * Arranca el suscriptor del historial; basta con cargar la clase.
+     */
+    public static void start() {}
 
-        String fileOutName = "bg_out_"+ launchDate.format(formatter) +".log";
-        String fileErrName = "bg_err_"+ launchDate.format(formatter) +".log";
+    private static void consume() {
+        try {
+            while (running) {
+                JobEvents.Event e = events.poll(1, TimeUnit.SECONDS);
+                if (e != null) write(e);
+            }
+        } catch (InterruptedException ignored) {}
+    }
 
-        File fileOut = new File("logs" + File.separator + fileOutName);
-        File fileErr = new File("logs" + File.separator + fileErrName);
+    private static void write(JobEvents.Event e) {
+        Trace.Span span = Trace.span(Trace.Phase.HISTORY, new TraceEvents.HistoryWriteEvent())
+                .pid(e.pid())
+                .command(e.cmd());
+        historyAppender.append(e.line());
+        span.end();
+    }
 
-        pb.redirectOutput(fileOut);
-        pb.redirectError(fileErr);
+    public static void logInfoInHistory(Job j) {
+        Trace.Span span = Trace.span(Trace.Phase.HISTORY, new TraceEvents.HistoryWriteEvent())
+                .pid(j.getPID())
+                .command(j.getCmd());
+        historyAppender.append(j.toString());
+        span.end();
+    }
 
-        return "OUT=logs/" + fileOut.getName() + " ERR=logs/" + fileErr.getName();
+    /**
+     * Deja de recibir eventos, escribe los que quedaban en cola y vacía el appender.
+     */
+    public static synchronized void shutdown() {
+        if (!running) return;
+        running = false;
+        events.close();
+        JobEvents.Event e;
+        while ((e = events.poll()) != null) write(e);
+        historyAppender.shutdown();
     }
 }
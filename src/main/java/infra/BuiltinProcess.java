@@ -0,0 +1,164 @@
+package infra;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+/**
+ * Etapa integrada en marcha, vista como un Process para que
+ * {@link PipelineSupervisor} la trate igual que a las etapas externas: espera
+ * su onExit(), la cierra si termina la etapa siguiente y la destruye al vencer
+ * el timeout. Sus flujos estándar se conectan por canales, así que
+ * getInputStream/getOutputStream devuelven flujos vacíos.
+ */
+class BuiltinProcess extends Process {
+    // Como un proceso terminado por SIGTERM (128 + 15)
+    private static final int EXIT_DESTROYED = 143;
+
+    private final BuiltinStage stage;
+    private final ReadableByteChannel in;
+    private final WritableByteChannel out;
+    private final PrintStream err;
+    private final boolean closeErr;
+    private final CompletableFuture<Process> exit = new CompletableFuture<>();
+    private volatile int exitCode;
+    private volatile boolean destroyed;
+
+    BuiltinProcess(BuiltinStage stage, ReadableByteChannel in, WritableByteChannel out, PrintStream err, boolean closeErr) {
+        this.stage = stage;
+        this.in = in;
+        this.out = out;
+        this.err = err;
+        this.closeErr = closeErr;
+    }
+
+    BuiltinProcess start() {
+        ExecutionEngine.pump(this::run);
+        return this;
+    }
+
+    private void run() {
+        int code;
+        try {
+            code = stage.run(in, out, err);
+        } catch (BuiltinStage.BrokenPipeException e) {
+            code = BuiltinStage.EXIT_PIPE;
+        } catch (IOException | RuntimeException e) {
+            if (!destroyed) err.println(stage.getName() + ": " + e.getMessage());
+            code = stage.errorExit();
+        } finally {
+            // cerrar la entrada avisa a la etapa anterior; cerrar la salida da EOF a la siguiente
+            close(in);
+            close(out);
+            if (closeErr) err.close();
+            else err.flush();
+        }
+        exitCode = destroyed ? EXIT_DESTROYED : code;
+        exit.complete(this);
+    }
+
+    private static void close(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ignored) {}
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        try {
+            exit.get();
+        } catch (ExecutionException ignored) {}
+        return exitCode;
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            exit.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public int exitValue() {
+        if (!exit.isDone()) throw new IllegalThreadStateException(stage.getName() + " no ha terminado");
+        return exitCode;
+    }
+
+    /**
+     * Cierra los canales: las lecturas y escrituras pendientes fallan y la
+     * etapa termina con el código de un proceso matado.
+     */
+    @Override
+    public void destroy() {
+        if (exit.isDone()) return;
+        destroyed = true;
+        close(in);
+        close(out);
+    }
+
+    @Override
+    public Process destroyForcibly() {
+        destroy();
+        return this;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return !exit.isDone();
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit() {
+        return exit.copy();
+    }
+
+    // No hay proceso del SO detrás
+    @Override
+    public long pid() {
+        return -1;
+    }
+
+    @Override
+    public Stream<ProcessHandle> children() {
+        return Stream.empty();
+    }
+
+    @Override
+    public Stream<ProcessHandle> descendants() {
+        return Stream.empty();
+    }
+
+    @Override
+    public String toString() {
+        return stage.toString();
+    }
+}
@@ -0,0 +1,707 @@
+package infra;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Filtros de tubería ejecutados dentro de la JVM (grep, head, tail, wc y tee)
+ * para no lanzar un {@code bash -lc} por etapas triviales. Leen y escriben
+ * sobre canales con buffers de bytes. Solo se reconoce un subconjunto de
+ * opciones de GNU; ante cualquier otra cosa (ficheros, comodines, variables...)
+ * {@link #parse(String)} no devuelve nada y la etapa se lanza como proceso.
+ */
+public abstract class BuiltinStage {
+    // Código de salida de un proceso que escribe en una tubería sin lector (128 + SIGPIPE)
+    public static final int EXIT_PIPE = 141;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAX_TAIL_BYTES = 64L * 1024 * 1024;
+    // Sin comillas, estos caracteres tienen significado para la shell
+    private static final String SHELL_CHARS = "$`*?[]{}~;&|<>()!#";
+
+    private static volatile boolean enabled = !"false".equals(System.getProperty("pipeline.builtins"));
+
+    protected final String name;
+
+    protected BuiltinStage(String name) {
+        this.name = name;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Código de salida cuando falla la lectura o la escritura.
+     */
+    public int errorExit() {
+        return 1;
+    }
+
+    /**
+     * Procesa la entrada hasta el final (o hasta que no necesite más) y
+     * devuelve el código de salida. Los errores de escritura en una tubería
+     * cerrada llegan como {@link BrokenPipeException}.
+     */
+    public abstract int run(ReadableByteChannel in, WritableByteChannel out, PrintStream err) throws IOException;
+
+    /**
+     * Reconoce el texto de una etapa tal como lo genera {@code CommandLine.script}.
+     */
+    public static Optional<BuiltinStage> parse(String script) {
+        if (!enabled) return Optional.empty();
+        List<String> argv = tokenize(script);
+        if (argv == null || argv.isEmpty()) return Optional.empty();
+        List<String> args = argv.subList(1, argv.size());
+        try {
+            return Optional.ofNullable(switch (argv.get(0)) {
+                case "grep" -> Grep.parse(args);
+                case "head" -> Head.parse(args);
+                case "tail" -> Tail.parse(args);
+                case "wc" -> Wc.parse(args);
+                case "tee" -> Tee.parse(args);
+                default -> null;
+            });
+        } catch (NumberFormatException | PatternSyntaxException e) {
+            // que la herramienta real dé su propio mensaje de error
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Separa en palabras deshaciendo las comillas y las barras
+     * invertidas. Devuelve null si la shell haría algo más que eso con el texto.
+     */
+    static List<String> tokenize(String script) {
+        List<String> words = new ArrayList<>();
+        StringBuilder current = null;
+        for (int i = 0; i < script.length(); i++) {
+            char c = script.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (current != null) words.add(current.toString());
+                current = null;
+                continue;
+            }
+            if (current == null) current = new StringBuilder();
+            if (c == '\'') {
+                int close = script.indexOf('\'', i + 1);
+                if (close < 0) return null;
+                current.append(script, i + 1, close);
+                i = close;
+            } else if (c == '"') {
+                // entre comillas dobles solo $, ` y \ harían algo más que agrupar
+                int close = script.indexOf('"', i + 1);
+                if (close < 0) return null;
+                String content = script.substring(i + 1, close);
+                if (content.chars().anyMatch(ch -> ch == '$' || ch == '`' || ch == '\\')) return null;
+                current.append(content);
+                i = close;
+            } else if (c == '\\') {
+                if (i + 1 == script.length()) return null;
+                current.append(script.charAt(++i));
+            } else if (SHELL_CHARS.indexOf(c) >= 0) {
+                return null;
+            } else {
+                current.append(c);
+            }
+        }
+        if (current != null) words.add(current.toString());
+        // VAR=valor delante del comando también lo resuelve la shell
+        if (!words.isEmpty() && words.get(0).contains("=")) return null;
+        return words;
+    }
+
+    // Número de -n 10, -n10 o -10; null si la opción no es de ese tipo
+    private static String optionValue(List<String> args, int i, String flag) {
+        String a = args.get(i);
+        if (a.equals(flag)) return i + 1 < args.size() ? args.get(i + 1) : null;
+        if (a.startsWith(flag)) return a.substring(flag.length());
+        return null;
+    }
+
+    private static long parseCount(String s) {
+        long v = Long.parseLong(s);
+        if (v < 0 || s.startsWith("+") || s.startsWith("-")) throw new NumberFormatException(s);
+        return v;
+    }
+
+    /**
+     * Canal sobre el stdout de un proceso. A diferencia de Channels.newChannel,
+     * lee directamente sobre el array del buffer, sin copias de 8 KB.
+     */
+    static ReadableByteChannel channel(InputStream in) {
+        return new ReadableByteChannel() {
+            private volatile boolean open = true;
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (!dst.hasArray()) throw new IllegalArgumentException("se esperaba un buffer en el heap");
+                int n = in.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                if (n > 0) dst.position(dst.position() + n);
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return open;
+            }
+
+            @Override
+            public void close() throws IOException {
+                open = false;
+                in.close();
+            }
+        };
+    }
+
+    /**
+     * Canal sobre el stdin de un proceso o la salida de la sesión, escribiendo
+     * el array del buffer de una vez.
+     */
+    static WritableByteChannel channel(OutputStream out) {
+        return new WritableByteChannel() {
+            private volatile boolean open = true;
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                if (!src.hasArray()) throw new IllegalArgumentException("se esperaba un buffer en el heap");
+                int n = src.remaining();
+                out.write(src.array(), src.arrayOffset() + src.position(), n);
+                src.position(src.limit());
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return open;
+            }
+
+            @Override
+            public void close() throws IOException {
+                open = false;
+                out.close();
+            }
+        };
+    }
+
+    /**
+     * Se lanza al escribir en una tubería cuyo lector ya terminó.
+     */
+    public static class BrokenPipeException extends IOException {
+        BrokenPipeException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    // Salida con buffer sobre el canal
+    static final class Output {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(byte[] a, int off, int len) throws IOException {
+            if (len > buffer.remaining()) {
+                flush();
+                if (len > buffer.capacity()) {
+                    writeFully(ByteBuffer.wrap(a, off, len));
+                    return;
+                }
+            }
+            buffer.put(a, off, len);
+        }
+
+        void write(ByteBuffer src) throws IOException {
+            flush();
+            writeFully(src);
+        }
+
+        void print(String s) throws IOException {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            write(b, 0, b.length);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer src) throws IOException {
+            try {
+                while (src.hasRemaining()) channel.write(src);
+            } catch (IOException e) {
+                throw new BrokenPipeException(e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface LineConsumer {
+        /**
+         * Recibe la línea en a[off, off+len), con su '\n' salvo en la última
+         * línea si no lo tenía. Devuelve false para dejar de leer.
+         */
+        boolean accept(byte[] a, int off, int len) throws IOException;
+    }
+
+    // Recorre las líneas sin copiarlas; el buffer crece si una línea no cabe
+    static void forEachLine(ReadableByteChannel in, LineConsumer consumer) throws IOException {
+        byte[] a = new byte[BUFFER_SIZE];
+        ByteBuffer bb = ByteBuffer.wrap(a);
+        int start = 0, end = 0, scan = 0;
+        while (true) {
+            while (scan < end) {
+                if (a[scan++] == '\n') {
+                    if (!consumer.accept(a, start, scan - start)) return;
+                    start = scan;
+                }
+            }
+            if (end == a.length) {
+                if (start > 0) {
+                    System.arraycopy(a, start, a, 0, end - start);
+                    end -= start;
+                    scan -= start;
+                    start = 0;
+                } else {
+                    a = Arrays.copyOf(a, a.length * 2);
+                    bb = ByteBuffer.wrap(a);
+                }
+            }
+            bb.limit(a.length).position(end);
+            int n = in.read(bb);
+            if (n < 0) {
+                if (end > start) consumer.accept(a, start, end - start);
+                return;
+            }
+            end += n;
+        }
+    }
+
+    private static boolean endsWithNewline(byte[] a, int off, int len) {
+        return len > 0 && a[off + len - 1] == '\n';
+    }
+
+    /**
+     * {@code grep [-vicnqFE] [--] patrón}. Sin -E solo se aceptan patrones en los
+     * que la sintaxis básica de grep y la de java.util.regex coinciden.
+     */
+    static final class Grep extends BuiltinStage {
+        private final boolean invert, count, number, quiet;
+        private final Pattern pattern;
+        // patrón sin metacaracteres: se busca directamente sobre los bytes
+        private final byte[] literal;
+
+        private Grep(boolean invert, boolean count, boolean number, boolean quiet, Pattern pattern, byte[] literal) {
+            super("grep");
+            this.invert = invert;
+            this.count = count;
+            this.number = number;
+            this.quiet = quiet;
+            this.pattern = pattern;
+            this.literal = literal;
+        }
+
+        static Grep parse(List<String> args) {
+            boolean invert = false, count = false, number = false, quiet = false;
+            boolean ignoreCase = false, fixed = false, extended = false;
+            int i = 0;
+            for (; i < args.size(); i++) {
+                String a = args.get(i);
+                if (a.equals("--")) {
+                    i++;
+                    break;
+                }
+                if (!a.startsWith("-") || a.length() == 1) break;
+                for (char f : a.substring(1).toCharArray()) {
+                    switch (f) {
+                        case 'v' -> invert = true;
+                        case 'c' -> count = true;
+                        case 'n' -> number = true;
+                        case 'q' -> quiet = true;
+                        case 'i' -> ignoreCase = true;
+                        case 'F' -> fixed = true;
+                        case 'E' -> extended = true;
+                        default -> { return null; }
+                    }
+                }
+            }
+            // un único patrón y ningún fichero
+            if (i != args.size() - 1) return null;
+            String p = args.get(i);
+            if (p.isEmpty() || p.indexOf('\n') >= 0) return null;
+
+            boolean isLiteral = fixed || p.chars().noneMatch(c -> ".[]*^$\\+?|(){}".indexOf(c) >= 0);
+            if (!isLiteral) {
+                if (p.contains("[:") || p.contains("\\")) return null;
+                if (!extended && p.chars().anyMatch(c -> "+?|(){}".indexOf(c) >= 0)) return null;
+            }
+            int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+            Pattern pattern = Pattern.compile(isLiteral ? Pattern.quote(p) : p, flags);
+            byte[] literal = isLiteral && !ignoreCase ? p.getBytes(StandardCharsets.UTF_8) : null;
+            return new Grep(invert, count, number, quiet, pattern, literal);
+        }
+
+        @Override
+        public int errorExit() {
+            return 2;
+        }
+
+        @Override
+        public int run(ReadableByteChannel in, WritableByteChannel out, PrintStream err) throws IOException {
+            Output o = new Output(out);
+            Matcher m = pattern.matcher("");
+            long[] lineNo = {0};
+            long[] selected = {0};
+            forEachLine(in, (a, off, len) -> {
+                lineNo[0]++;
+                int textLen = endsWithNewline(a, off, len) ? len - 1 : len;
+                boolean match = literal != null
+                        ? indexOf(a, off, textLen, literal) >= 0
+                        : m.reset(new String(a, off, textLen, StandardCharsets.UTF_8)).find();
+                if (match == invert) return true;
+                selected[0]++;
+                if (quiet) return false;
+                if (!count) {
+                    if (number) o.print(lineNo[0] + ":");
+                    o.write(a, off, textLen);
+                    o.write(NEWLINE, 0, 1);
+                }
+                return true;
+            });
+            if (count && !quiet) o.print(selected[0] + "\n");
+            o.flush();
+            return selected[0] > 0 ? 0 : 1;
+        }
+
+        private static int indexOf(byte[] a, int off, int len, byte[] needle) {
+            byte first = needle[0];
+            int last = off + len - needle.length;
+            for (int i = off; i <= last; i++) {
+                if (a[i] != first) continue;
+                if (Arrays.equals(a, i + 1, i + needle.length, needle, 1, needle.length)) return i;
+            }
+            return -1;
+        }
+    }
+
+    private static final byte[] NEWLINE = {'\n'};
+
+    /**
+     * {@code head [-n N | -N | -c N]}. Deja de leer en cuanto tiene lo que
+     * necesita, así que la etapa anterior recibe SIGPIPE y no sigue produciendo.
+     */
+    static final class Head extends BuiltinStage {
+        private final long limit;
+        private final boolean bytes;
+
+        private Head(long limit, boolean bytes) {
+            super("head");
+            this.limit = limit;
+            this.bytes = bytes;
+        }
+
+        static Head parse(List<String> args) {
+            long limit = 10;
+            boolean bytes = false;
+            for (int i = 0; i < args.size(); i++) {
+                String a = args.get(i);
+                String v;
+                if ((v = optionValue(args, i, "-n")) != null) {
+                    bytes = false;
+                } else if ((v = optionValue(args, i, "-c")) != null) {
+                    bytes = true;
+                } else if (a.length() > 1 && a.startsWith("-") && Character.isDigit(a.charAt(1))) {
+                    v = a.substring(1);
+                    bytes = false;
+                } else {
+                    return null;
+                }
+                if (a.equals("-n") || a.equals("-c")) i++;
+                limit = parseCount(v);
+            }
+            return new Head(limit, bytes);
+        }
+
+        @Override
+        public int run(ReadableByteChannel in, WritableByteChannel out, PrintStream err) throws IOException {
+            Output o = new Output(out);
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            long remaining = limit;
+            while (remaining > 0 && in.read(buf) >= 0) {
+                buf.flip();
+                if (bytes) {
+                    if (buf.remaining() > remaining) buf.limit(buf.position() + (int) remaining);
+                    remaining -= buf.remaining();
+                } else {
+                    for (int i = buf.position(); i < buf.limit(); i++) {
+                        if (buf.get(i) == '\n' && --remaining == 0) {
+                            buf.limit(i + 1);
+                            break;
+                        }
+                    }
+                }
+                o.write(buf);
+                buf.clear();
+            }
+            o.flush();
+            return 0;
+        }
+    }
+
+    /**
+     * {@code tail [-n N | -N | -n +N | -c N]}. Guarda solo las últimas N líneas
+     * (o bytes) en un anillo.
+     */
+    static final class Tail extends BuiltinStage {
+        private final long count;
+        private final boolean bytes;
+        private final boolean fromStart;
+
+        private Tail(long count, boolean bytes, boolean fromStart) {
+            super("tail");
+            this.count = count;
+            this.bytes = bytes;
+            this.fromStart = fromStart;
+        }
+
+        static Tail parse(List<String> args) {
+            long count = 10;
+            boolean bytes = false, fromStart = false;
+            for (int i = 0; i < args.size(); i++) {
+                String a = args.get(i);
+                String v;
+                if ((v = optionValue(args, i, "-n")) != null) {
+                    bytes = false;
+                } else if ((v = optionValue(args, i, "-c")) != null) {
+                    bytes = true;
+                } else if (a.length() > 1 && a.startsWith("-") && Character.isDigit(a.charAt(1))) {
+                    v = a.substring(1);
+                    bytes = false;
+                } else {
+                    return null;
+                }
+                if (a.equals("-n") || a.equals("-c")) i++;
+                fromStart = v.startsWith("+") && !bytes;
+                count = parseCount(fromStart ? v.substring(1) : v);
+            }
+            if (bytes && count > MAX_TAIL_BYTES) return null;
+            return new Tail(count, bytes, fromStart);
+        }
+
+        @Override
+        public int run(ReadableByteChannel in, WritableByteChannel out, PrintStream err) throws IOException {
+            Output o = new Output(out);
+            if (fromStart) {
+                long[] line = {0};
+                forEachLine(in, (a, off, len) -> {
+                    if (++line[0] >= count) o.write(a, off, len);
+                    return true;
+                });
+            } else if (bytes) {
+                tailBytes(in, o);
+            } else if (count > 0) {
+                ArrayDeque<byte[]> ring = new ArrayDeque<>();
+                forEachLine(in, (a, off, len) -> {
+                    if (ring.size() == count) ring.removeFirst();
+                    ring.addLast(Arrays.copyOfRange(a, off, off + len));
+                    return true;
+                });
+                for (byte[] l : ring) o.write(l, 0, l.length);
+            } else {
+                drain(in);
+            }
+            o.flush();
+            return 0;
+        }
+
+        private void tailBytes(ReadableByteChannel in, Output o) throws IOException {
+            byte[] ring = new byte[(int) count];
+            long total = 0;
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                while (buf.hasRemaining() && ring.length > 0) {
+                    int pos = (int) (total % ring.length);
+                    int n = Math.min(buf.remaining(), ring.length - pos);
+                    buf.get(ring, pos, n);
+                    total += n;
+                }
+                buf.clear();
+            }
+            if (total <= ring.length) {
+                o.write(ring, 0, (int) total);
+            } else {
+                int pos = (int) (total % ring.length);
+                o.write(ring, pos, ring.length - pos);
+                o.write(ring, 0, pos);
+            }
+        }
+    }
+
+    /**
+     * {@code wc [-lwc]}. Con una sola cuenta imprime solo el número; con
+     * varias, columnas de ancho 7 como GNU wc al leer de la entrada estándar.
+     */
+    static final class Wc extends BuiltinStage {
+        private final boolean lines, words, bytes;
+
+        private Wc(boolean lines, boolean words, boolean bytes) {
+            super("wc");
+            this.lines = lines;
+            this.words = words;
+            this.bytes = bytes;
+        }
+
+        static Wc parse(List<String> args) {
+            boolean lines = false, words = false, bytes = false;
+            for (String a : args) {
+                if (!a.startsWith("-") || a.length() == 1) return null;
+                for (char f : a.substring(1).toCharArray()) {
+                    switch (f) {
+                        case 'l' -> lines = true;
+                        case 'w' -> words = true;
+                        case 'c' -> bytes = true;
+                        default -> { return null; }
+                    }
+                }
+            }
+            if (!lines && !words && !bytes) lines = words = bytes = true;
+            return new Wc(lines, words, bytes);
+        }
+
+        @Override
+        public int run(ReadableByteChannel in, WritableByteChannel out, PrintStream err) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            byte[] a = buf.array();
+            long nl = 0, nw = 0, nc = 0;
+            boolean inWord = false;
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                nc += n;
+                int len = buf.position();
+                if (words) {
+                    for (int i = 0; i < len; i++) {
+                        byte b = a[i];
+                        if (b == '\n') nl++;
+                        boolean space = b == ' ' || (b >= '\t' && b <= '\r');
+                        if (!space && !inWord) nw++;
+                        inWord = !space;
+                    }
+                } else if (lines) {
+                    for (int i = 0; i < len; i++) {
+                        if (a[i] == '\n') nl++;
+                    }
+                }
+                buf.clear();
+            }
+            List<Long> counts = new ArrayList<>();
+            if (lines) counts.add(nl);
+            if (words) counts.add(nw);
+            if (bytes) counts.add(nc);
+            StringBuilder sb = new StringBuilder();
+            for (long c : counts) {
+                if (!sb.isEmpty()) sb.append(' ');
+                sb.append(counts.size() == 1 ? Long.toString(c) : String.format("%7d", c));
+            }
+            Output o = new Output(out);
+            o.print(sb.append('\n').toString());
+            o.flush();
+            return 0;
+        }
+    }
+
+    /**
+     * {@code tee [-a] fichero...}. Los ficheros se resuelven contra el
+     * directorio de la sesión al analizar la etapa.
+     */
+    static final class Tee extends BuiltinStage {
+        private final List<File> files;
+        private final boolean append;
+
+        private Tee(List<File> files, boolean append) {
+            super("tee");
+            this.files = files;
+            this.append = append;
+        }
+
+        static Tee parse(List<String> args) {
+            boolean append = false;
+            List<File> files = new ArrayList<>();
+            for (String a : args) {
+                if (a.equals("-a")) append = true;
+                else if (a.startsWith("-")) return null;
+                else files.add(Session.current().resolve(a));
+            }
+            return new Tee(files, append);
+        }
+
+        @Override
+        public int run(ReadableByteChannel in, WritableByteChannel out, PrintStream err) throws IOException {
+            List<FileChannel> channels = new ArrayList<>();
+            int exit = 0;
+            try {
+                for (File f : files) {
+                    try {
+                        channels.add(FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING));
+                    } catch (IOException e) {
+                        err.println("tee: " + f + ": " + e.getMessage());
+                        exit = 1;
+                    }
+                }
+                Output o = new Output(out);
+                ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+                while (in.read(buf) >= 0) {
+                    buf.flip();
+                    for (FileChannel fc : channels) {
+                        ByteBuffer view = buf.duplicate();
+                        while (view.hasRemaining()) fc.write(view);
+                    }
+                    o.write(buf);
+                    buf.clear();
+                }
+                o.flush();
+            } finally {
+                for (FileChannel fc : channels) fc.close();
+            }
+            return exit;
+        }
+    }
+
+    private static void drain(ReadableByteChannel in) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        while (in.read(buf) >= 0) buf.clear();
+    }
+
+    @Override
+    public String toString() {
+        return name + " (integrado)";
+    }
+}
@@ -0,0 +1,232 @@
+package infra;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Historial de comandos en un fichero de solo añadido. Cada línea es
+ * {@code epochMillis\tduraciónMs\texit\tcomando} y en memoria se guarda el
+ * offset de cada entrada, así que consultar las últimas N o la entrada n no
+ * obliga a releer el fichero. Al arrancar el índice se reconstruye recorriendo
+ * el fichero mapeado en memoria. Varios intérpretes (la consola y el demonio)
+ * pueden compartir el fichero: cada escritura se hace al final real del
+ * fichero bajo un {@link FileLock}, y antes de leer se indexan las líneas que
+ * hayan añadido los demás.
+ */
+public class CommandHistory {
+    private static final File historyFile = new File("history" + File.separator + "mi_interprete_historial.log");
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final long MAP_CHUNK = 256L * 1024 * 1024;
+    private static final int MAX_SEARCH_RESULTS = 50;
+
+    private static FileChannel channel;
+    private static long[] offsets = new long[1024];
+    private static int count;
+    private static long end;
+
+    static {
+        try {
+            historyFile.getAbsoluteFile().getParentFile().mkdirs();
+            channel = FileChannel.open(historyFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            indexFrom(0);
+        } catch (IOException e) {
+            System.out.println("Error al abrir el historial: " + e.getMessage());
+        }
+    }
+
+    public static File getFile() {
+        return historyFile;
+    }
+
+    public static synchronized int size() {
+        catchUp();
+        return count;
+    }
+
+    /**
+     * Añade una entrada. El comando se guarda en una sola línea.
+     */
+    public static synchronized void record(String command, long startMillis, long durationMs, Integer exitCode) {
+        if (channel == null || command.isBlank()) return;
+        String line = startMillis + "\t" + durationMs + "\t" + (exitCode == null ? "-" : exitCode) + "\t"
+                + command.replace('\n', ' ').replace('\r', ' ') + "\n";
+        ByteBuffer buf = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        try (FileLock ignored = channel.lock()) {
+            indexFrom(end);
+            long position = channel.size();
+            if (position > end) {
+                // otro proceso murió a mitad de línea: se cierra y queda como una entrada ilegible
+                position += channel.write(ByteBuffer.wrap(new byte[]{'\n'}), position);
+                addOffset(end);
+                end = position;
+            }
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+            addOffset(end);
+            end = position;
+        } catch (IOException e) {
+            System.out.println("Error al escribir en el historial: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Comando de la entrada n (1-based).
+     */
+    public static synchronized Optional<String> getCommand(int n) {
+        catchUp();
+        if (n < 1 || n > count) return Optional.empty();
+        return readEntry(n - 1).map(e -> e[3]);
+    }
+
+    public static synchronized String last(int n) {
+        catchUp();
+        StringBuilder sb = new StringBuilder();
+        for (int i = Math.max(0, count - n); i < count; i++) {
+            final int idx = i;
+            readEntry(i).ifPresent(e -> sb.append(format(idx + 1, e)).append('\n'));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Busca desde la entrada más reciente. Con {@code ^texto} se buscan
+     * comandos que empiecen por el texto; si no, que lo contengan.
+     */
+    public static synchronized String search(String query) {
+        catchUp();
+        boolean prefix = query.startsWith("^");
+        byte[] needle = (prefix ? query.substring(1) : query).getBytes(StandardCharsets.UTF_8);
+        List<String> matches = new ArrayList<>();
+
+        for (int i = count - 1; i >= 0 && matches.size() < MAX_SEARCH_RESULTS; i--) {
+            Optional<byte[]> raw = readRaw(i);
+            if (raw.isEmpty()) continue;
+            byte[] line = raw.get();
+            int cmdStart = commandStart(line);
+            if (cmdStart < 0) continue;
+            if (prefix ? startsWith(line, cmdStart, needle) : contains(line, cmdStart, needle)) {
+                final int idx = i;
+                parse(line).ifPresent(e -> matches.add(format(idx + 1, e)));
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = matches.size() - 1; i >= 0; i--) {
+            sb.append(matches.get(i)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void addOffset(long offset) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[count++] = offset;
+    }
+
+    // Indexa lo que otros intérpretes hayan añadido desde la última lectura
+    private static void catchUp() {
+        if (channel == null) return;
+        try {
+            indexFrom(end);
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Recorre el fichero mapeado por bloques desde {@code from} anotando el
+     * inicio de cada línea completa. Una última línea sin salto puede ser la
+     * escritura en curso de otro proceso: no se indexa ni se toca.
+     */
+    private static void indexFrom(long from) throws IOException {
+        long size = channel.size();
+        long lineStart = from;
+        for (long base = from; base < size; base += MAP_CHUNK) {
+            long len = Math.min(MAP_CHUNK, size - base);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, base, len);
+            for (int i = 0; i < len; i++) {
+                if (map.get(i) == '\n') {
+                    addOffset(lineStart);
+                    lineStart = base + i + 1;
+                }
+            }
+        }
+        end = lineStart;
+    }
+
+    private static Optional<byte[]> readRaw(int i) {
+        long start = offsets[i];
+        long stop = i + 1 < count ? offsets[i + 1] : end;
+        ByteBuffer buf = ByteBuffer.allocate((int) (stop - start));
+        try {
+            long position = start;
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf, position);
+                if (n < 0) break;
+                position += n;
+            }
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+        return Optional.of(buf.array());
+    }
+
+    private static Optional<String[]> readEntry(int i) {
+        return readRaw(i).flatMap(CommandHistory::parse);
+    }
+
+    private static Optional<String[]> parse(byte[] line) {
+        String s = new String(line, StandardCharsets.UTF_8).stripTrailing();
+        String[] parts = s.split("\t", 4);
+        return parts.length == 4 ? Optional.of(parts) : Optional.empty();
+    }
+
+    private static int commandStart(byte[] line) {
+        int tabs = 0;
+        for (int i = 0; i < line.length; i++) {
+            if (line[i] == '\t' && ++tabs == 3) return i + 1;
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] line, int from, byte[] needle) {
+        if (line.length - from < needle.length) return false;
+        for (int k = 0; k < needle.length; k++) {
+            if (line[from + k] != needle[k]) return false;
+        }
+        return true;
+    }
+
+    private static boolean contains(byte[] line, int from, byte[] needle) {
+        for (int i = from; i <= line.length - needle.length; i++) {
+            if (startsWith(line, i, needle)) return true;
+        }
+        return false;
+    }
+
+    private static String format(int n, String[] e) {
+        String when;
+        try {
+            when = LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(e[0])), ZoneId.systemDefault())
+                    .format(formatter);
+        } catch (NumberFormatException ex) {
+            when = e[0];
+        }
+        return String.format("%6d  %s  %8sms  %5s  %s", n, when, e[1], e[2], e[3]);
+    }
+}
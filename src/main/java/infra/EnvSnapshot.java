@@ -0,0 +1,99 @@
+package infra;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Entorno de una sesión como foto inmutable: el entorno de la JVM, compartido
+ * por todas las fotos, más los cambios hechos con set/export/unset. Cada
+ * cambio crea una foto nueva que comparte la base, y al lanzar un proceso
+ * solo se aplican esos cambios al ProcessBuilder.
+ */
+public final class EnvSnapshot {
+    private static final EnvSnapshot BASE = new EnvSnapshot(Map.of(), Set.of());
+
+    private final Map<String, String> overrides;
+    private final Set<String> removed;
+    // vista completa, calculada la primera vez que se pide
+    private volatile Map<String, String> merged;
+
+    private EnvSnapshot(Map<String, String> overrides, Set<String> removed) {
+        this.overrides = overrides;
+        this.removed = removed;
+    }
+
+    public static EnvSnapshot base() {
+        return BASE;
+    }
+
+    public EnvSnapshot with(String name, String value) {
+        if (value.equals(get(name))) return this;
+        Map<String, String> o = new HashMap<>(overrides);
+        Set<String> r = new HashSet<>(removed);
+        r.remove(name);
+        if (value.equals(System.getenv(name))) o.remove(name);
+        else o.put(name, value);
+        return new EnvSnapshot(Map.copyOf(o), Set.copyOf(r));
+    }
+
+    public EnvSnapshot without(String name) {
+        if (get(name) == null) return this;
+        Map<String, String> o = new HashMap<>(overrides);
+        Set<String> r = new HashSet<>(removed);
+        o.remove(name);
+        if (System.getenv(name) != null) r.add(name);
+        return new EnvSnapshot(Map.copyOf(o), Set.copyOf(r));
+    }
+
+    public String get(String name) {
+        if (removed.contains(name)) return null;
+        String v = overrides.get(name);
+        return v != null ? v : System.getenv(name);
+    }
+
+    public boolean isBase() {
+        return overrides.isEmpty() && removed.isEmpty();
+    }
+
+    /**
+     * Entorno completo ordenado por nombre.
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> m = merged;
+        if (m == null) {
+            TreeMap<String, String> t = new TreeMap<>(System.getenv());
+            t.keySet().removeAll(removed);
+            t.putAll(overrides);
+            m = merged = Collections.unmodifiableMap(t);
+        }
+        return m;
+    }
+
+    /**
+     * Aplica los cambios al entorno del ProcessBuilder. Sin cambios no se toca
+     * {@code pb.environment()}, que copiaría el entorno entero.
+     */
+    public void apply(ProcessBuilder pb) {
+        if (isBase()) return;
+        Map<String, String> env = pb.environment();
+        env.keySet().removeAll(removed);
+        env.putAll(overrides);
+    }
+
+    /**
+     * Órdenes de shell que reproducen los cambios (para las shells del pool).
+     */
+    public String toShell() {
+        StringBuilder sb = new StringBuilder();
+        for (String name : removed) sb.append("unset ").append(name).append("; ");
+        for (Map.Entry<String, String> e : overrides.entrySet()) {
+            sb.append("export ").append(e.getKey()).append("='")
+                    .append(e.getValue().replace("'", "'\\''")).append("'; ");
+        }
+        return sb.toString();
+    }
+}
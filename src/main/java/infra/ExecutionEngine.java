@@ -0,0 +1,120 @@
+package infra;
+
+import domain.Job;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Motor de ejecución compartido por todo el intérprete. Las tareas cortas
+ * (vigilantes de timeout, compresión de logs...) se ejecutan en hilos
+ * virtuales limitados por un número máximo de tareas concurrentes
+ * ({@code -Dexec.maxConcurrency}). Los lectores de flujos viven tanto como su
+ * proceso y van por {@link #pump}, sin límite: si esperasen un permiso el
+ * hijo se bloquearía con la tubería llena.
+ */
+public class ExecutionEngine {
+    private static final int DEFAULT_MAX_CONCURRENCY = 256;
+
+    private static final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("exec-", 0).factory());
+    private static final int maxConcurrency = Integer.getInteger("exec.maxConcurrency", DEFAULT_MAX_CONCURRENCY);
+    private static final Semaphore permits = new Semaphore(maxConcurrency, true);
+
+    private static final AtomicInteger active = new AtomicInteger();
+    private static final AtomicInteger queued = new AtomicInteger();
+    private static final AtomicInteger pumps = new AtomicInteger();
+    private static final LongAdder completed = new LongAdder();
+
+    public static <T> Future<T> submit(Callable<T> task) {
+        queued.incrementAndGet();
+        return executor.submit(() -> {
+            try {
+                permits.acquire();
+            } finally {
+                queued.decrementAndGet();
+            }
+            active.incrementAndGet();
+            try {
+                return task.call();
+            } finally {
+                active.decrementAndGet();
+                completed.increment();
+                permits.release();
+            }
+        });
+    }
+
+    public static Future<?> submit(Runnable task) {
+        return submit(Executors.callable(task));
+    }
+
+    /**
+     * Ejecuta una tarea que lee o escribe un flujo de un proceso hasta que
+     * este termina (gobblers, volcado a logs, etapas integradas). No pasa por
+     * el límite de concurrencia.
+     */
+    public static <T> Future<T> pump(Callable<T> task) {
+        return executor.submit(() -> {
+            pumps.incrementAndGet();
+            try {
+                return task.call();
+            } finally {
+                pumps.decrementAndGet();
+            }
+        });
+    }
+
+    public static Future<?> pump(Runnable task) {
+        return pump(Executors.callable(task));
+    }
+
+    /**
+     * Espera la finalización del proceso sobre su futuro onExit(), sin
+     * dejar un hilo de plataforma bloqueado en waitFor.
+     */
+    public static boolean awaitExit(Process p, long timeoutMs) throws InterruptedException {
+        TraceEvents.WaitEvent event = new TraceEvents.WaitEvent();
+        Trace.Span span = Trace.span(Trace.Phase.WAIT, event).pid(p.pid());
+        try {
+            p.onExit().get(timeoutMs, TimeUnit.MILLISECONDS);
+            event.finished = true;
+        } catch (TimeoutException e) {
+            event.finished = false;
+        } catch (ExecutionException e) {
+            event.finished = !p.isAlive();
+        } finally {
+            span.command(ProcessRegistry.getJob(p.pid()).map(Job::getCmd).orElse(null)).end();
+        }
+        return event.finished;
+    }
+
+    public static int getActive() {
+        return active.get();
+    }
+
+    public static int getQueued() {
+        return queued.get();
+    }
+
+    public static int getPumps() {
+        return pumps.get();
+    }
+
+    public static long getCompleted() {
+        return completed.sum();
+    }
+
+    public static int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public static String metrics() {
+        return "max=" + maxConcurrency +
+                " active=" + getActive() +
+                " queued=" + getQueued() +
+                " completed=" + getCompleted() +
+                " pumps=" + getPumps();
+    }
+}
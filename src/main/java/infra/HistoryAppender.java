@@ -0,0 +1,202 @@
+package infra;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Escritor de historial de larga duración. Los registros se encolan sin bloqueo
+ * y un único hilo los agrupa en commits sobre un FileChannel que permanece abierto.
+ */
+public class HistoryAppender {
+    public enum FsyncPolicy { NONE, INTERVAL, EVERY_BATCH }
+
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final int MAX_BATCH = 512;
+    private static final long DEFAULT_FSYNC_INTERVAL_MS = 1000;
+
+    private final File file;
+    private final FsyncPolicy policy;
+    private final long fsyncIntervalNanos;
+    private final int capacity;
+
+    private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Thread writer;
+    private volatile boolean running = true;
+    // tras un error de escritura el escritor se para y los registros se descartan
+    private volatile boolean failed;
+    private final LongAdder dropped = new LongAdder();
+
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private long lastFsync = System.nanoTime();
+
+    public HistoryAppender(File file, FsyncPolicy policy, long fsyncIntervalMs, int capacity) {
+        this.file = file;
+        this.policy = policy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs);
+        this.capacity = capacity;
+        this.writer = new Thread(this::loop, "history-appender");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Crea el appender leyendo la política de fsync de las propiedades
+     * {@code history.fsync} (none|interval|batch) e {@code history.fsync.ms}.
+     */
+    public static HistoryAppender fromSystemProperties(File file) {
+        String p = System.getProperty("history.fsync", "none").toLowerCase();
+        FsyncPolicy policy = switch (p) {
+            case "interval" -> FsyncPolicy.INTERVAL;
+            case "batch" -> FsyncPolicy.EVERY_BATCH;
+            default -> FsyncPolicy.NONE;
+        };
+        long interval = Long.getLong("history.fsync.ms", DEFAULT_FSYNC_INTERVAL_MS);
+        return new HistoryAppender(file, policy, interval, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Encola una línea. Si la cola está llena el llamante espera a que el
+     * escritor libere espacio en lugar de perder el registro. Si el escritor
+     * se paró por un error, la línea se descarta y se cuenta.
+     */
+    public void append(String line) {
+        if (!running) {
+            if (failed) dropped.increment();
+            return;
+        }
+        while (true) {
+            int n = size.get();
+            if (n < capacity && size.compareAndSet(n, n + 1)) break;
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(50_000);
+            if (!running) {
+                if (failed) dropped.increment();
+                return;
+            }
+        }
+        queue.offer(line);
+        LockSupport.unpark(writer);
+    }
+
+    public int pending() {
+        return size.get();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Detiene el escritor tras vaciar la cola y cierra el canal.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void loop() {
+        try {
+            while (running || !queue.isEmpty()) {
+                if (queue.isEmpty()) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                    maybeIntervalFsync();
+                    continue;
+                }
+                writeBatch();
+            }
+        } catch (IOException e) {
+            // sin escritor, append dejaría de bloquear solo al llenarse la cola: se para ya
+            failed = true;
+            running = false;
+            while (queue.poll() != null) {
+                size.decrementAndGet();
+                dropped.increment();
+            }
+            System.out.println("Error al escribir en el historial: " + e.getMessage()
+                    + " (los registros siguientes se descartan)");
+        } finally {
+            closeChannel();
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        FileChannel ch = channel();
+        buffer.clear();
+        int written = 0;
+        String line;
+        while (written < MAX_BATCH && (line = queue.poll()) != null) {
+            size.decrementAndGet();
+            byte[] bytes = (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > buffer.remaining()) {
+                flush(ch);
+                if (bytes.length > buffer.capacity()) {
+                    buffer = ByteBuffer.allocateDirect(bytes.length);
+                }
+            }
+            buffer.put(bytes);
+            written++;
+        }
+        flush(ch);
+
+        if (policy == FsyncPolicy.EVERY_BATCH) {
+            ch.force(false);
+        } else {
+            maybeIntervalFsync();
+        }
+    }
+
+    private void flush(FileChannel ch) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            ch.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void maybeIntervalFsync() {
+        if (policy != FsyncPolicy.INTERVAL || channel == null) return;
+        long now = System.nanoTime();
+        if (now - lastFsync >= fsyncIntervalNanos) {
+            try {
+                channel.force(false);
+            } catch (IOException ignored) {
+                // se reintentará en el siguiente intervalo
+            }
+            lastFsync = now;
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) parent.mkdirs();
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            if (policy != FsyncPolicy.NONE) channel.force(false);
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+}
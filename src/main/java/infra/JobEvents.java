@@ -0,0 +1,133 @@
+package infra;
+
+import domain.Job;
+import domain.JobState;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bus de eventos del ciclo de vida de los jobs. {@link ProcessRegistry}
+ * publica cuando un job arranca y cuando termina. Cada suscriptor (historial,
+ * {@code jobs --watch}...) tiene su propia cola acotada: publicar nunca
+ * bloquea, y si la cola de un suscriptor está llena el evento se descarta
+ * para él y se cuenta como perdido.
+ */
+public class JobEvents {
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    public enum Type {
+        STARTED,
+        EXITED,
+        TIMED_OUT,
+        KILLED,
+        LIMIT_EXCEEDED;
+
+        static Type of(JobState state) {
+            return switch (state) {
+                case QUEUED, RUNNING -> STARTED;
+                case EXITED -> EXITED;
+                case TIMED_OUT -> TIMED_OUT;
+                case KILLED -> KILLED;
+                case LIMIT_EXCEEDED -> LIMIT_EXCEEDED;
+            };
+        }
+    }
+
+    /**
+     * @param line fila de la tabla de jobs en el momento del evento
+     */
+    public record Event(Type type, long pid, String cmd, int exitCode, Instant at, String line) {
+
+        public String format() {
+            return String.format("%-10s%-16s%-10d%-8s%s",
+                    LocalTime.ofInstant(at, ZoneId.systemDefault()).format(TIME),
+                    type,
+                    pid,
+                    type == Type.STARTED ? "-" : String.valueOf(exitCode),
+                    cmd);
+        }
+    }
+
+    public static final class Subscription implements AutoCloseable {
+        private final String name;
+        private final ArrayBlockingQueue<Event> queue;
+        private final LongAdder dropped = new LongAdder();
+
+        private Subscription(String name, int capacity) {
+            this.name = name;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        private void offer(Event e) {
+            if (!queue.offer(e)) dropped.increment();
+        }
+
+        public Event poll() {
+            return queue.poll();
+        }
+
+        public Event poll(long timeout, TimeUnit unit) throws InterruptedException {
+            return queue.poll(timeout, unit);
+        }
+
+        public int size() {
+            return queue.size();
+        }
+
+        public long getDropped() {
+            return dropped.sum();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void close() {
+            subscribers.remove(this);
+        }
+    }
+
+    private static final CopyOnWriteArrayList<Subscription> subscribers = new CopyOnWriteArrayList<>();
+    private static final Map<Type, LongAdder> published = new EnumMap<>(Type.class);
+
+    static {
+        for (Type t : Type.values()) published.put(t, new LongAdder());
+    }
+
+    public static Subscription subscribe(String name, int capacity) {
+        Subscription s = new Subscription(name, capacity);
+        subscribers.add(s);
+        return s;
+    }
+
+    static void publish(Job j) {
+        Type type = Type.of(j.getEstado());
+        published.get(type).increment();
+        if (subscribers.isEmpty()) return;
+        Event e = new Event(type, j.getPID(), j.getCmd(), j.getExitCode(), Instant.now(), j.toString());
+        for (Subscription s : subscribers) s.offer(e);
+    }
+
+    /**
+     * Eventos publicados por tipo y estado de la cola de cada suscriptor.
+     */
+    public static String stats() {
+        StringBuilder sb = new StringBuilder("Publicados:");
+        published.forEach((t, n) -> sb.append(' ').append(t).append('=').append(n.sum()));
+        sb.append('\n').append(String.format("%-24s%-10s%-10s%n", "SUSCRIPTOR", "EN COLA", "PERDIDOS"));
+        for (Subscription s : subscribers) {
+            sb.append(String.format("%-24s%-10d%-10d%n", s.getName(), s.size(), s.getDropped()));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,331 @@
+package infra;
+
+import domain.Job;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * Diario binario de altas y finales de jobs para recuperar la tabla de procesos
+ * al reiniciar el intérprete. Cada registro es {@code [longitud][crc32c][datos]}
+ * y los datos empiezan por tipo, PID e instante de arranque del proceso. Cada
+ * cierto número de registros se escribe una instantánea con los jobs vivos y el
+ * diario se vacía, así que al arrancar solo hay que releer unos pocos registros.
+ *
+ * <p>Cada intérprete escribe sus propios ficheros ({@code jobs-<pid>.*}) y
+ * mantiene un {@link FileLock} exclusivo sobre {@code jobs-<pid>.lock} mientras
+ * vive. Al arrancar se adoptan los diarios cuyo cerrojo está libre, es decir,
+ * los de intérpretes que ya terminaron; los de uno en marcha (el demonio, otra
+ * consola) no se tocan.
+ */
+public class JobJournal {
+    private static final File dir = new File("history");
+    private static final String OWN_ID = Long.toString(ProcessHandle.current().pid());
+    private static final Pattern JOURNAL_FILE = Pattern.compile("jobs-(\\d+)\\.(journal|journal\\.old|snapshot|lock)");
+    private static final int SNAPSHOT_EVERY = Integer.getInteger("journal.snapshot.every", 1000);
+
+    private static final byte ADD = 1;
+    private static final byte EXIT = 2;
+    private static final byte REMOVE = 3;
+    private static final int HEADER = 8;
+    private static final int MAX_RECORD = 64 * 1024;
+
+    private static FileChannel channel;
+    private static FileLock ownerLock;
+    private static long end;
+    private static int sinceSnapshot;
+    private static boolean compacting;
+
+    // Job leído del diario, pendiente de validar contra el SO
+    private record Entry(long pid, long startMillis, long inicioMillis, String cmd) { }
+
+    static {
+        try {
+            dir.mkdirs();
+            FileChannel lockChannel = FileChannel.open(file(OWN_ID, "lock").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            ownerLock = lockChannel.lock();
+            channel = openJournal();
+            end = channel.size();
+        } catch (IOException e) {
+            System.out.println("Error al abrir el diario de jobs: " + e.getMessage());
+        }
+    }
+
+    private static File file(String id, String kind) {
+        return new File(dir, "jobs-" + id + "." + kind);
+    }
+
+    private static FileChannel openJournal() throws IOException {
+        return FileChannel.open(file(OWN_ID, "journal").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    public static synchronized void recordAdd(Job j) {
+        append(addRecord(j));
+    }
+
+    public static synchronized void recordExit(Job j) {
+        ByteBuffer b = header(EXIT, j, 5);
+        b.put((byte) j.getEstado().ordinal()).putInt(j.getExitCode());
+        append(b.flip());
+    }
+
+    public static synchronized void recordRemove(Job j) {
+        append(header(REMOVE, j, 0).flip());
+    }
+
+    private static ByteBuffer addRecord(Job j) {
+        byte[] cmd = j.getCmd().getBytes(StandardCharsets.UTF_8);
+        int len = Math.min(cmd.length, MAX_RECORD - 32);
+        ByteBuffer b = header(ADD, j, 8 + len);
+        b.putLong(j.getInicio().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        b.put(cmd, 0, len);
+        return b.flip();
+    }
+
+    private static ByteBuffer header(byte type, Job j, int extra) {
+        ByteBuffer b = ByteBuffer.allocate(HEADER + 17 + extra);
+        b.position(HEADER);
+        b.put(type).putLong(j.getPID()).putLong(j.getStartInstant() == null ? -1 : j.getStartInstant().toEpochMilli());
+        return b;
+    }
+
+    // Rellena longitud y CRC de un registro ya serializado
+    private static ByteBuffer seal(ByteBuffer b) {
+        CRC32C crc = new CRC32C();
+        crc.update(b.array(), HEADER, b.limit() - HEADER);
+        b.putInt(0, b.limit() - HEADER).putInt(4, (int) crc.getValue());
+        return b;
+    }
+
+    private static void append(ByteBuffer record) {
+        if (channel == null) return;
+        try {
+            write(channel, seal(record), end);
+            end += record.limit();
+            // la compactación escribe y sincroniza la instantánea fuera del hilo que lanza el job
+            if (++sinceSnapshot >= SNAPSHOT_EVERY && !compacting) {
+                compacting = true;
+                ExecutionEngine.submit(JobJournal::compactInBackground);
+            }
+        } catch (IOException e) {
+            System.out.println("Error al escribir en el diario de jobs: " + e.getMessage());
+        }
+    }
+
+    private static void compactInBackground() {
+        try {
+            snapshot();
+        } catch (IOException e) {
+            System.out.println("Error al escribir la instantánea de jobs: " + e.getMessage());
+        }
+    }
+
+    private static long write(FileChannel ch, ByteBuffer b, long position) throws IOException {
+        while (b.hasRemaining()) {
+            position += ch.write(b, position);
+        }
+        return position;
+    }
+
+    /**
+     * Escribe los jobs vivos en la instantánea (fichero temporal y renombrado
+     * atómico) y vacía el diario. Con el cerrojo del diario solo se aparta el
+     * diario actual a {@code .old} y se abre uno nuevo; la escritura y el
+     * fsync de la instantánea se hacen sin bloquear a quien añade registros.
+     * Si el proceso muere antes de terminar, al recuperar se leen la
+     * instantánea anterior, el {@code .old} y el diario nuevo.
+     */
+    public static void snapshot() throws IOException {
+        List<ByteBuffer> records = new ArrayList<>();
+        synchronized (JobJournal.class) {
+            if (channel == null) return;
+            try {
+                channel.close();
+                Files.move(file(OWN_ID, "journal").toPath(), file(OWN_ID, "journal.old").toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                channel = openJournal();
+                end = channel.size();
+            }
+            sinceSnapshot = 0;
+            compacting = true;
+            for (Job j : ProcessRegistry.getJobs()) {
+                if (j.isAlive()) records.add(seal(addRecord(j)));
+            }
+        }
+
+        try {
+            File snapshotFile = file(OWN_ID, "snapshot");
+            File tmp = new File(snapshotFile.getPath() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = 0;
+                for (ByteBuffer b : records) position = write(out, b, position);
+                out.force(true);
+            }
+            Files.move(tmp.toPath(), snapshotFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(file(OWN_ID, "journal.old").toPath());
+        } finally {
+            synchronized (JobJournal.class) {
+                compacting = false;
+            }
+        }
+    }
+
+    /**
+     * Reconstruye la tabla de jobs a partir de las instantáneas y los diarios
+     * propios y de los intérpretes que ya no están en marcha. Solo se
+     * recuperan los procesos que siguen vivos y cuyo instante de arranque
+     * coincide con el registrado; el resto han terminado o su PID se ha
+     * reutilizado. Los jobs adoptados pasan a la instantánea de este
+     * intérprete y los ficheros del anterior se borran.
+     */
+    public static String recover() {
+        if (channel == null) return "";
+        long t0 = System.nanoTime();
+        Map<Long, Entry> live = new LinkedHashMap<>();
+        Map<String, FileChannel> adopted = new LinkedHashMap<>();
+        try {
+            synchronized (JobJournal.class) {
+                // ficheros propios de un intérprete anterior con el mismo PID
+                replayFile(file(OWN_ID, "snapshot"), live);
+                replayFile(file(OWN_ID, "journal.old"), live);
+                long valid = replay(channel, live);
+                // un registro incompleto al final (escritura interrumpida) se descarta
+                if (valid < channel.size()) channel.truncate(valid);
+                end = valid;
+            }
+            for (String id : otherJournals()) {
+                FileChannel lockChannel = FileChannel.open(file(id, "lock").toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                if (lockChannel.tryLock() == null) {
+                    // su intérprete sigue en marcha
+                    lockChannel.close();
+                    continue;
+                }
+                adopted.put(id, lockChannel);
+                for (String kind : List.of("snapshot", "journal.old", "journal")) {
+                    replayFile(file(id, kind), live);
+                }
+            }
+        } catch (IOException e) {
+            adopted.values().forEach(JobJournal::closeQuietly);
+            return "Error al leer el diario de jobs: " + e.getMessage();
+        }
+
+        int restored = 0;
+        for (Entry e : live.values()) {
+            Instant start = e.startMillis() < 0 ? null : Instant.ofEpochMilli(e.startMillis());
+            Job j = new Job(e.pid(), LocalDateTime.ofInstant(Instant.ofEpochMilli(e.inicioMillis()), ZoneId.systemDefault()),
+                    e.cmd(), start);
+            Optional<ProcessHandle> ph = ProcessHandle.of(e.pid()).filter(ProcessHandle::isAlive).filter(j::matches);
+            if (ph.isPresent() && ProcessRegistry.getJob(e.pid()).isEmpty()) {
+                ProcessRegistry.restoreJob(j, ph.get());
+                restored++;
+            }
+        }
+
+        try {
+            snapshot();
+            // con la instantánea propia ya escrita, los ficheros adoptados sobran
+            for (String id : adopted.keySet()) {
+                for (String kind : List.of("journal", "journal.old", "snapshot", "lock")) {
+                    Files.deleteIfExists(file(id, kind).toPath());
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error al escribir la instantánea de jobs: " + e.getMessage());
+        } finally {
+            adopted.values().forEach(JobJournal::closeQuietly);
+        }
+        if (live.isEmpty()) return "";
+        return String.format("Jobs recuperados: %d (descartados %d terminados o con PID reutilizado) en %.1f ms",
+                restored, live.size() - restored, (System.nanoTime() - t0) / 1e6);
+    }
+
+    private static void replayFile(File f, Map<Long, Entry> live) throws IOException {
+        if (!f.exists()) return;
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            replay(ch, live);
+        }
+    }
+
+    // Intérpretes con ficheros de diario en history, salvo este
+    private static TreeSet<String> otherJournals() {
+        TreeSet<String> ids = new TreeSet<>();
+        String[] names = dir.list();
+        if (names == null) return ids;
+        for (String name : names) {
+            Matcher m = JOURNAL_FILE.matcher(name);
+            if (m.matches() && !m.group(1).equals(OWN_ID)) ids.add(m.group(1));
+        }
+        return ids;
+    }
+
+    private static void closeQuietly(FileChannel ch) {
+        try {
+            ch.close();
+        } catch (IOException ignored) {}
+    }
+
+    // Aplica los registros al mapa y devuelve el offset del último registro válido
+    private static long replay(FileChannel ch, Map<Long, Entry> live) throws IOException {
+        long size = ch.size();
+        if (size == 0) return 0;
+        ByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        CRC32C crc = new CRC32C();
+
+        while (map.remaining() >= HEADER) {
+            int start = map.position();
+            int len = map.getInt();
+            int checksum = map.getInt();
+            if (len < 17 || len > MAX_RECORD || len > map.remaining()) return start;
+
+            ByteBuffer data = map.slice(map.position(), len);
+            crc.reset();
+            crc.update(data.duplicate());
+            if ((int) crc.getValue() != checksum) return start;
+            map.position(map.position() + len);
+
+            byte type = data.get();
+            long pid = data.getLong();
+            long startMillis = data.getLong();
+            switch (type) {
+                case ADD -> {
+                    long inicio = data.getLong();
+                    byte[] cmd = new byte[data.remaining()];
+                    data.get(cmd);
+                    live.put(pid, new Entry(pid, startMillis, inicio, new String(cmd, StandardCharsets.UTF_8)));
+                }
+                case EXIT, REMOVE -> {
+                    Entry e = live.get(pid);
+                    if (e != null && e.startMillis() == startMillis) live.remove(pid);
+                }
+                default -> { return start; }
+            }
+        }
+        return map.position();
+    }
+}
@@ -0,0 +1,184 @@
+package infra;
+
+import domain.JobState;
+import domain.Priority;
+import domain.ResourceLimits;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Control de admisión para runbg: como mucho {@code maxRunning} jobs lanzados
+ * por el planificador se ejecutan a la vez. El resto espera en una cola por
+ * prioridad (FIFO dentro de cada una) y arranca al terminar uno en ejecución.
+ */
+public class JobScheduler {
+    private static final int DEFAULT_MAX_RUNNING = Runtime.getRuntime().availableProcessors();
+
+    private static final Map<Priority, ArrayDeque<Pending>> queues = new EnumMap<>(Priority.class);
+    private static int maxRunning = Math.max(1, Integer.getInteger("jobs.max.running", DEFAULT_MAX_RUNNING));
+    private static int running;
+    private static long nextId;
+
+    static {
+        for (Priority p : Priority.values()) queues.put(p, new ArrayDeque<>());
+    }
+
+    /**
+     * Job a la espera de plaza.
+     */
+    public record Pending(long id, String cmd, List<String> command, long timeoutMs,
+                          Priority priority, ResourceLimits limits, LocalDateTime encolado, Session session) {
+
+        public String getHoraEncolado() {
+            return encolado.getHour() + ":" + encolado.getMinute() + ":" + encolado.getSecond();
+        }
+    }
+
+    /**
+     * Lanza el job si hay plaza libre o lo deja en cola. Con {@code nice}
+     * distinto de cero se ejecuta a través de nice(1) (solo Linux). Los límites
+     * de recursos se aplican al arrancar, no al encolar.
+     */
+    public static synchronized String submit(List<String> cmd, String commandExecuted, long timeoutMs,
+                                             Priority priority, int nice, ResourceLimits limits) {
+        List<String> command = withNice(cmd, nice);
+        ProcessManager.setLastExitCode(0);
+
+        if (running < maxRunning && queuedCount() == 0) {
+            try {
+                long pid = start(command, commandExecuted, timeoutMs, limits);
+                String result = "BG PID=" + pid + " " + LogStore.describe(pid);
+                if (timeoutMs > 0) result += " TIMEOUT=" + timeoutMs + "ms";
+                return limits.isEmpty() ? result : result + " LÍMITES=" + limits;
+            } catch (IOException e) {
+                ProcessManager.setLastExitCode(ProcessManager.EXIT_ERROR);
+                return "Error: " + e.getMessage();
+            }
+        }
+
+        Pending p = new Pending(++nextId, commandExecuted, command, timeoutMs, priority, limits, LocalDateTime.now(),
+                Session.current());
+        queues.get(priority).addLast(p);
+        return "EN COLA Q" + p.id() + " posición " + position(p.id())
+                + " (prioridad " + priority.getLabel() + ", " + running + "/" + maxRunning + " en ejecución)";
+    }
+
+    private static List<String> withNice(List<String> cmd, int nice) {
+        if (nice == 0 || Platform.isWindows()) return cmd;
+        List<String> wrapped = new ArrayList<>(List.of("nice", "-n", Integer.toString(nice)));
+        wrapped.addAll(cmd);
+        return wrapped;
+    }
+
+    // Debe llamarse con el monitor de la clase
+    private static long start(List<String> command, String commandExecuted, long timeoutMs,
+                              ResourceLimits limits) throws IOException {
+        Process process = ProcessManager.startBackground(command, commandExecuted, timeoutMs, limits);
+        running++;
+        process.onExit().thenRun(JobScheduler::release);
+        return process.pid();
+    }
+
+    private static synchronized void release() {
+        running--;
+        dispatch();
+    }
+
+    private static void dispatch() {
+        while (running < maxRunning) {
+            Pending next = poll();
+            if (next == null) return;
+            // se lanza con el directorio y el entorno de la sesión que lo encoló
+            Session previous = Session.current();
+            Session.bind(next.session());
+            try {
+                start(next.command(), next.cmd(), next.timeoutMs(), next.limits());
+            } catch (IOException e) {
+                System.err.println("Error al lanzar el job en cola Q" + next.id() + ": " + e.getMessage());
+            } finally {
+                Session.bind(previous);
+            }
+        }
+    }
+
+    private static Pending poll() {
+        for (ArrayDeque<Pending> q : queues.values()) {
+            Pending p = q.pollFirst();
+            if (p != null) return p;
+        }
+        return null;
+    }
+
+    private static int queuedCount() {
+        int n = 0;
+        for (ArrayDeque<Pending> q : queues.values()) n += q.size();
+        return n;
+    }
+
+    private static int position(long id) {
+        List<Pending> all = queued();
+        for (int i = 0; i < all.size(); i++) {
+            if (all.get(i).id() == id) return i + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Jobs en cola en el orden en que se lanzarán.
+     */
+    public static synchronized List<Pending> queued() {
+        List<Pending> all = new ArrayList<>();
+        queues.values().forEach(all::addAll);
+        return all;
+    }
+
+    public static synchronized boolean cancel(long id) {
+        for (ArrayDeque<Pending> q : queues.values()) {
+            if (q.removeIf(p -> p.id() == id)) return true;
+        }
+        return false;
+    }
+
+    public static synchronized int getMaxRunning() {
+        return maxRunning;
+    }
+
+    public static synchronized void setMaxRunning(int max) {
+        maxRunning = Math.max(1, max);
+        dispatch();
+    }
+
+    /**
+     * Filas de la tabla de jobs para los que esperan en la cola.
+     */
+    public static synchronized String renderQueued() {
+        StringBuilder sb = new StringBuilder();
+        int pos = 1;
+        for (Pending p : queued()) {
+            sb.append(String.format("%-20s%-20s%-20s%-20s%-10s%s",
+                    "Q" + p.id(),
+                    p.cmd(),
+                    p.getHoraEncolado(),
+                    JobState.QUEUED.getLabel() + " #" + pos++,
+                    "-",
+                    p.limits())).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static synchronized String status() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("En ejecución: ").append(running).append('/').append(maxRunning)
+                .append("  En cola: ").append(queuedCount());
+        for (Priority p : Priority.values()) {
+            sb.append("  ").append(p.getLabel()).append('=').append(queues.get(p).size());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,505 @@
+package infra;
+
+import domain.Job;
+import util.NumberParsing;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Almacén de logs de los jobs en background, un directorio por job:
+ * {@code logs/<pid>-<arranque en ms>/}. El job escribe él mismo en
+ * {@code out.log} y {@code err.log} (redirección a fichero en modo append), así
+ * que sigue funcionando si el intérprete termina. Desde la JVM un vigilante
+ * rota esos ficheros por tamaño y por antigüedad copiándolos a
+ * {@code <flujo>.NNNNNN.log} y vaciándolos, los segmentos cerrados se
+ * comprimen y un índice pequeño ({@code <flujo>.idx}) guarda las líneas de
+ * cada segmento para servir colas sin recorrer los ficheros enteros.
+ */
+public class LogStore {
+    public static final String OUT = "out";
+    public static final String ERR = "err";
+
+    private static final File root = new File("logs");
+    private static final long segmentBytes = Long.getLong("logs.segment.bytes", 8L * 1024 * 1024);
+    private static final long segmentAgeMs = Long.getLong("logs.segment.age.ms", TimeUnit.HOURS.toMillis(1));
+    private static final int maxSegments = Integer.getInteger("logs.segments.max", 10);
+    private static final long retentionMs = Long.getLong("logs.retention.ms", TimeUnit.DAYS.toMillis(7));
+
+    private static final long FOLLOW_POLL_MS = 200;
+    private static final long ROTATE_POLL_MS = Long.getLong("logs.rotate.poll.ms", 1000);
+    private static final Pattern SEGMENT = Pattern.compile("(out|err)\\.(\\d{6})\\.log(\\.gz)?");
+    private static final Pattern JOB_DIR = Pattern.compile("\\d+-\\d+|\\.new-\\d+-\\d+");
+    private static final AtomicLong nextPending = new AtomicLong();
+
+    static {
+        pruneOldJobs();
+    }
+
+    /**
+     * Directorio de logs de un job que aún no ha arrancado. Se crea con un
+     * nombre provisional porque el PID no se conoce hasta lanzar el proceso.
+     */
+    public static final class Pending {
+        private final File dir;
+
+        private Pending(File dir) {
+            this.dir = dir;
+        }
+
+        public void redirect(ProcessBuilder pb) {
+            pb.redirectOutput(ProcessBuilder.Redirect.appendTo(activeFile(dir, OUT)));
+            pb.redirectError(ProcessBuilder.Redirect.appendTo(activeFile(dir, ERR)));
+        }
+
+        /**
+         * Da al directorio su nombre definitivo y empieza a rotar sus logs.
+         * Los descriptores del hijo siguen siendo válidos tras renombrarlo.
+         */
+        public String attach(Process p) {
+            long start = p.info().startInstant().map(Instant::toEpochMilli).orElse(System.currentTimeMillis());
+            File target = new File(root, p.pid() + "-" + start);
+            File dir = this.dir;
+            try {
+                Files.move(this.dir.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                dir = target;
+            } catch (IOException e) {
+                System.out.println("Error al renombrar el log " + this.dir + ": " + e.getMessage());
+            }
+            watch(dir, p.onExit());
+            return describe(dir);
+        }
+
+        public void discard() {
+            deleteDir(dir);
+        }
+    }
+
+    public static Pending prepare() throws IOException {
+        File dir = new File(root, ".new-" + ProcessHandle.current().pid() + "-" + nextPending.incrementAndGet());
+        Files.createDirectories(dir.toPath());
+        return new Pending(dir);
+    }
+
+    /**
+     * Vuelve a rotar los logs de un job recuperado del diario.
+     */
+    public static void resume(long pid, ProcessHandle ph) {
+        jobDir(pid).filter(File::isDirectory).ifPresent(dir -> watch(dir, ph.onExit()));
+    }
+
+    public static String describe(long pid) {
+        return jobDir(pid).map(LogStore::describe).orElse("OUT=- ERR=-");
+    }
+
+    private static String describe(File dir) {
+        String base = "logs/" + dir.getName() + "/";
+        return "OUT=" + base + OUT + ".log ERR=" + base + ERR + ".log";
+    }
+
+    /**
+     * Directorio del job con ese PID: el de su arranque si está en la tabla
+     * de jobs o, si no, el más reciente con ese PID.
+     */
+    public static Optional<File> jobDir(long pid) {
+        Optional<Instant> start = ProcessRegistry.getJob(pid).map(Job::getStartInstant);
+        if (start.isPresent()) {
+            File exact = new File(root, pid + "-" + start.get().toEpochMilli());
+            if (exact.isDirectory()) return Optional.of(exact);
+        }
+        String prefix = pid + "-";
+        File[] dirs = root.listFiles(f -> f.isDirectory() && f.getName().startsWith(prefix));
+        if (dirs == null) return Optional.empty();
+        return Arrays.stream(dirs)
+                .filter(d -> NumberParsing.tryParseToLong(d.getName().substring(prefix.length())))
+                .max(Comparator.comparingLong(d -> Long.parseLong(d.getName().substring(prefix.length()))));
+    }
+
+    // Comprueba los dos flujos cada ROTATE_POLL_MS hasta que el job termina
+    private static void watch(File dir, CompletableFuture<?> exit) {
+        Rotator out = new Rotator(dir, OUT);
+        Rotator err = new Rotator(dir, ERR);
+        ExecutionEngine.pump(() -> {
+            while (!exit.isDone()) {
+                try {
+                    exit.get(ROTATE_POLL_MS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ignored) {
+                } catch (InterruptedException e) {
+                    return;
+                } catch (ExecutionException e) {
+                    break;
+                }
+                out.check();
+                err.check();
+            }
+        });
+    }
+
+    private static class Rotator {
+        private final File dir;
+        private final String stream;
+        private final List<IndexEntry> index = new ArrayList<>();
+        private int seq;
+        private long openedAt = System.currentTimeMillis();
+
+        Rotator(File dir, String stream) {
+            this.dir = dir;
+            this.stream = stream;
+            this.index.addAll(readIndex(dir, stream));
+            this.seq = index.stream().mapToInt(e -> e.seq).max().orElse(0);
+        }
+
+        /**
+         * Rota el fichero activo si supera el límite de tamaño o de edad. Para
+         * no partir líneas espera a que acabe en salto de línea, salvo que el
+         * job no escriba ninguno y el fichero llegue al doble del límite.
+         */
+        synchronized void check() {
+            File active = activeFile(dir, stream);
+            long size = active.length();
+            boolean old = size > 0 && System.currentTimeMillis() - openedAt >= segmentAgeMs;
+            if (size < segmentBytes && !old) return;
+            try (FileChannel ch = FileChannel.open(active.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (size < 2 * segmentBytes && !endsWithNewline(ch)) return;
+                rotate(ch);
+            } catch (IOException e) {
+                System.out.println("Error al rotar el log " + active + ": " + e.getMessage());
+            }
+        }
+
+        /**
+         * Copia el fichero activo a un segmento nuevo y lo vacía; el job lo
+         * tiene abierto en modo append y sigue escribiendo desde el principio.
+         * Lo que escribe durante la copia también se copia: solo se pierde lo
+         * que llegue entre la última copia y el truncado.
+         */
+        private void rotate(FileChannel ch) throws IOException {
+            File segment = segmentFile(dir, stream, seq + 1, false);
+            long copied = 0;
+            try (FileChannel target = FileChannel.open(segment.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size;
+                while ((size = ch.size()) > copied) {
+                    copied += ch.transferTo(copied, size - copied, target);
+                }
+                ch.truncate(0);
+            }
+            seq++;
+            openedAt = System.currentTimeMillis();
+            IndexEntry closedSegment = new IndexEntry(seq, countLines(segment), copied, false);
+            index.add(closedSegment);
+            applyRetention();
+            writeIndex(dir, stream, index);
+            ExecutionEngine.submit(() -> compress(closedSegment));
+        }
+
+        private void compress(IndexEntry entry) {
+            File plain = segmentFile(dir, stream, entry.seq, false);
+            File gz = segmentFile(dir, stream, entry.seq, true);
+            try (InputStream in = new FileInputStream(plain);
+                 OutputStream out = new GZIPOutputStream(new FileOutputStream(gz))) {
+                in.transferTo(out);
+            } catch (IOException e) {
+                gz.delete();
+                return;
+            }
+            plain.delete();
+            synchronized (this) {
+                entry.compressed = true;
+                writeIndex(dir, stream, index);
+            }
+        }
+
+        private void applyRetention() {
+            while (index.size() > maxSegments) {
+                IndexEntry oldest = index.remove(0);
+                segmentFile(dir, stream, oldest.seq, false).delete();
+                segmentFile(dir, stream, oldest.seq, true).delete();
+            }
+        }
+    }
+
+    private static boolean endsWithNewline(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size == 0) return false;
+        ByteBuffer last = ByteBuffer.allocate(1);
+        ch.read(last, size - 1);
+        return last.get(0) == '\n';
+    }
+
+    private static long countLines(File file) throws IOException {
+        long lines = 0;
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    if (buf[i] == '\n') lines++;
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static class IndexEntry {
+        final int seq;
+        final long lines;
+        final long bytes;
+        volatile boolean compressed;
+
+        IndexEntry(int seq, long lines, long bytes, boolean compressed) {
+            this.seq = seq;
+            this.lines = lines;
+            this.bytes = bytes;
+            this.compressed = compressed;
+        }
+    }
+
+    private static File activeFile(File dir, String stream) {
+        return new File(dir, stream + ".log");
+    }
+
+    private static File segmentFile(File dir, String stream, int seq, boolean compressed) {
+        return new File(dir, String.format("%s.%06d.log%s", stream, seq, compressed ? ".gz" : ""));
+    }
+
+    private static File indexFile(File dir, String stream) {
+        return new File(dir, stream + ".idx");
+    }
+
+    // Formato: una línea por segmento "seq lineas bytes comprimido"
+    private static void writeIndex(File dir, String stream, List<IndexEntry> index) {
+        File tmp = new File(dir, stream + ".idx.tmp");
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(tmp))) {
+            for (IndexEntry e : index) {
+                bw.write(e.seq + " " + e.lines + " " + e.bytes + " " + (e.compressed ? 1 : 0));
+                bw.newLine();
+            }
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), indexFile(dir, stream).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ignored) {}
+    }
+
+    private static List<IndexEntry> readIndex(File dir, String stream) {
+        List<IndexEntry> index = new ArrayList<>();
+        File f = indexFile(dir, stream);
+        if (!f.exists()) return index;
+        try {
+            for (String line : Files.readAllLines(f.toPath())) {
+                String[] p = line.trim().split(" ");
+                if (p.length != 4) continue;
+                index.add(new IndexEntry(Integer.parseInt(p[0]), Long.parseLong(p[1]),
+                        Long.parseLong(p[2]), p[3].equals("1")));
+            }
+        } catch (IOException | NumberFormatException ignored) {}
+        return index;
+    }
+
+    /**
+     * Últimas n líneas del flujo. El fichero activo se lee con un mapeo de
+     * memoria desde el final; los segmentos anteriores solo se abren si hacen
+     * falta más líneas, y el índice permite saltar las que no se van a mostrar.
+     */
+    public static String tail(long pid, String stream, int n) {
+        Optional<File> jobDir = jobDir(pid);
+        if (jobDir.isEmpty()) {
+            return "Error: No hay logs para el PID " + pid;
+        }
+        File dir = jobDir.get();
+
+        Deque<String> result = new ArrayDeque<>();
+        try {
+            File active = activeFile(dir, stream);
+            if (active.exists()) result.addAll(tailMapped(active, n));
+        } catch (IOException e) {
+            return "Error: No se pudo leer " + activeFile(dir, stream) + ": " + e.getMessage();
+        }
+
+        List<IndexEntry> index = readIndex(dir, stream);
+        Map<Integer, IndexEntry> bySeq = new HashMap<>();
+        index.forEach(e -> bySeq.put(e.seq, e));
+
+        List<Integer> segments = listSegments(dir, stream);
+        for (int i = segments.size() - 1; i >= 0 && result.size() < n; i--) {
+            int seq = segments.get(i);
+            int need = n - result.size();
+            File plain = segmentFile(dir, stream, seq, false);
+            try {
+                List<String> lines = plain.exists()
+                        ? tailMapped(plain, need)
+                        : tailCompressed(segmentFile(dir, stream, seq, true), bySeq.get(seq), need);
+                for (int k = lines.size() - 1; k >= 0; k--) result.addFirst(lines.get(k));
+            } catch (IOException e) {
+                result.addFirst("<error leyendo segmento " + seq + ": " + e.getMessage() + ">");
+                break;
+            }
+        }
+        return String.join("\n", result);
+    }
+
+    // Segmentos cerrados del flujo, de más antiguo a más reciente
+    private static List<Integer> listSegments(File dir, String stream) {
+        String[] names = dir.list();
+        TreeSet<Integer> seqs = new TreeSet<>();
+        if (names == null) return new ArrayList<>();
+        for (String name : names) {
+            Matcher m = SEGMENT.matcher(name);
+            if (m.matches() && m.group(1).equals(stream)) seqs.add(Integer.parseInt(m.group(2)));
+        }
+        return new ArrayList<>(seqs);
+    }
+
+    private static List<String> tailMapped(File file, int need) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size == 0) return lines;
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            int end = (int) size;
+            // un salto final no abre una línea vacía
+            if (buf.get(end - 1) == '\n') end--;
+            int pos = end - 1;
+            while (pos >= -1 && lines.size() < need) {
+                if (pos == -1 || buf.get(pos) == '\n') {
+                    byte[] bytes = new byte[end - pos - 1];
+                    buf.get(pos + 1, bytes);
+                    lines.add(0, new String(bytes, StandardCharsets.UTF_8));
+                    end = pos;
+                }
+                pos--;
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> tailCompressed(File gz, IndexEntry entry, int need) throws IOException {
+        List<String> lines = new ArrayList<>();
+        long skip = entry != null ? Math.max(0, entry.lines - need) : 0;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(gz)), StandardCharsets.UTF_8))) {
+            String line;
+            long n = 0;
+            while ((line = br.readLine()) != null) {
+                if (n++ < skip) continue;
+                lines.add(line);
+                if (entry == null && lines.size() > need) lines.remove(0);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Muestra la cola y sigue imprimiendo lo que el job escriba hasta que
+     * termine. Si el fichero activo se rota entre dos lecturas, lo que faltaba
+     * se lee del segmento recién cerrado.
+     */
+    public static void follow(long pid, String stream, int n, PrintStream target) {
+        target.println(tail(pid, stream, n));
+        Optional<File> jobDir = jobDir(pid);
+        if (jobDir.isEmpty()) return;
+        File dir = jobDir.get();
+
+        File active = activeFile(dir, stream);
+        List<Integer> segments = listSegments(dir, stream);
+        int seq = segments.isEmpty() ? 0 : segments.getLast();
+        long position = active.length();
+
+        while (true) {
+            File rotated = segmentFile(dir, stream, seq + 1, false);
+            File compressed = segmentFile(dir, stream, seq + 1, true);
+            if (rotated.exists() || compressed.exists()) {
+                if (!transfer(rotated, position, target) && !transferCompressed(compressed, position, target)) return;
+                seq++;
+                position = 0;
+                continue;
+            }
+            long size = active.length();
+            if (size > position) {
+                if (!transfer(active, position, target)) return;
+                position = size;
+                continue;
+            }
+            boolean alive = ProcessRegistry.getJob(pid).map(Job::isAlive)
+                    .orElseGet(() -> ProcessHandle.of(pid).isPresent());
+            if (!alive) return;
+            try {
+                Thread.sleep(FOLLOW_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static boolean transfer(File file, long position, PrintStream target) {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > position) ch.transferTo(position, size - position, Channels.newChannel(target));
+        } catch (IOException e) {
+            return false;
+        }
+        target.flush();
+        return true;
+    }
+
+    // El segmento pudo comprimirse antes de leerlo: se descomprime saltando lo ya mostrado
+    private static boolean transferCompressed(File gz, long position, PrintStream target) {
+        try (InputStream in = new GZIPInputStream(new FileInputStream(gz))) {
+            in.skipNBytes(position);
+            in.transferTo(target);
+        } catch (IOException e) {
+            return false;
+        }
+        target.flush();
+        return true;
+    }
+
+    // Borra directorios de jobs cuyo último cambio supera el periodo de retención
+    private static void pruneOldJobs() {
+        File[] dirs = root.listFiles(f -> f.isDirectory() && JOB_DIR.matcher(f.getName()).matches());
+        if (dirs == null) return;
+        long limit = System.currentTimeMillis() - retentionMs;
+        for (File d : dirs) {
+            if (lastWrite(d) < limit) deleteDir(d);
+        }
+    }
+
+    // El job escribe en ficheros ya creados, lo que no cambia la fecha del directorio
+    private static long lastWrite(File dir) {
+        long last = dir.lastModified();
+        File[] files = dir.listFiles();
+        if (files == null) return last;
+        for (File f : files) last = Math.max(last, f.lastModified());
+        return last;
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File f : files) f.delete();
+        dir.delete();
+    }
+}
@@ -0,0 +1,226 @@
+package infra;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Guarda la salida (stdout y stderr intercalados) de los últimos comandos en
+ * primer plano para consultarla con {@code last} sin volver a ejecutarlos.
+ * Cada captura se queda en memoria hasta {@code capture.memory.bytes}; a
+ * partir de ahí se vuelca a {@code logs/capture/<n>.log}. Solo se conservan
+ * las {@code capture.commands} más recientes.
+ */
+public class OutputCapture {
+    private static final File captureDir = new File("logs" + File.separator + "capture");
+    private static final int MAX_COMMANDS = Integer.getInteger("capture.commands", 20);
+    private static final int MEMORY_BYTES = Integer.getInteger("capture.memory.bytes", 256 * 1024);
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private static final ArrayDeque<Recording> ring = new ArrayDeque<>();
+    private static final ThreadLocal<Recording> current = new ThreadLocal<>();
+    private static volatile boolean enabled = !Boolean.getBoolean("capture.disabled");
+    private static long nextId;
+
+    static {
+        // las capturas de una ejecución anterior no se conservan
+        File[] old = captureDir.listFiles();
+        if (old != null) {
+            for (File f : old) f.delete();
+        }
+    }
+
+    /**
+     * Salida de un comando. Las escrituras llegan desde los gobblers de stdout
+     * y stderr a la vez, así que todo está sincronizado.
+     */
+    public static class Recording extends OutputStream {
+        private final long id;
+        private final String command;
+        private final LocalDateTime inicio = LocalDateTime.now();
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private File spillFile;
+        private OutputStream spill;
+        private long bytes;
+        private Integer exitCode;
+
+        Recording(long id, String command) {
+            this.id = id;
+            this.command = command;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (spill == null && memory.size() + len > MEMORY_BYTES) {
+                captureDir.mkdirs();
+                spillFile = new File(captureDir, id + ".log");
+                spill = new BufferedOutputStream(new FileOutputStream(spillFile));
+                memory.writeTo(spill);
+                memory = null;
+            }
+            if (spill != null) spill.write(b, off, len);
+            else memory.write(b, off, len);
+            bytes += len;
+        }
+
+        synchronized void finish(Integer exitCode) {
+            this.exitCode = exitCode;
+            if (spill != null) {
+                try { spill.close(); } catch (IOException ignored) {}
+            }
+        }
+
+        synchronized InputStream open() throws IOException {
+            if (spill == null) return new ByteArrayInputStream(memory.toByteArray());
+            spill.flush();
+            return new FileInputStream(spillFile);
+        }
+
+        synchronized void discard() {
+            finish(exitCode);
+            if (spillFile != null) spillFile.delete();
+        }
+
+        public long getId() { return id; }
+        public String getCommand() { return command; }
+        public synchronized long getBytes() { return bytes; }
+        public synchronized boolean isSpilled() { return spillFile != null; }
+        public synchronized Integer getExitCode() { return exitCode; }
+
+        @Override
+        public String toString() {
+            return String.format("%-6d%-10s%-6s%-10d%-9s%s",
+                    id, inicio.format(formatter),
+                    exitCode == null ? "-" : exitCode.toString(),
+                    getBytes(), isSpilled() ? "disco" : "memoria", command);
+        }
+    }
+
+    /**
+     * Copia lo escrito al destino y a la captura en curso. El destino se
+     * escribe primero para no retrasar la salida en vivo.
+     */
+    private static class Tee extends OutputStream {
+        private final OutputStream live;
+        private final Recording recording;
+
+        Tee(OutputStream live, Recording recording) {
+            this.live = live;
+            this.recording = recording;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            live.write(b);
+            recording.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            live.write(b, off, len);
+            recording.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            live.flush();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /**
+     * Indica si el hilo actual está capturando: en ese caso la salida del
+     * proceso debe pasar por la JVM en lugar de heredar el terminal.
+     */
+    public static boolean isRecording() {
+        return current.get() != null;
+    }
+
+    public static void begin(String command) {
+        Recording r;
+        synchronized (OutputCapture.class) {
+            r = new Recording(++nextId, command);
+            ring.addLast(r);
+            while (ring.size() > MAX_COMMANDS) ring.pollFirst().discard();
+        }
+        current.set(r);
+    }
+
+    public static void end(Integer exitCode) {
+        Recording r = current.get();
+        current.remove();
+        if (r != null) r.finish(exitCode);
+    }
+
+    /**
+     * Envuelve el destino para que lo escrito quede también en la captura en curso.
+     */
+    public static OutputStream tee(OutputStream target) {
+        Recording r = current.get();
+        return r == null ? target : new Tee(target, r);
+    }
+
+    public static PrintStream tee(PrintStream target) {
+        Recording r = current.get();
+        return r == null ? target : new PrintStream(new Tee(target, r), true, StandardCharsets.UTF_8);
+    }
+
+    public static synchronized List<Recording> recordings() {
+        return new ArrayList<>(ring);
+    }
+
+    /**
+     * Captura n-ésima empezando por la más reciente (1 = la última).
+     */
+    public static synchronized Optional<Recording> get(int n) {
+        if (n < 1 || n > ring.size()) return Optional.empty();
+        List<Recording> all = new ArrayList<>(ring);
+        return Optional.of(all.get(all.size() - n));
+    }
+
+    /**
+     * Escribe en {@code out} las líneas de la captura, solo las que contienen
+     * el patrón si se indica. Devuelve cuántas líneas se han escrito.
+     */
+    public static int print(Recording r, Pattern grep, String prefix, PrintStream out) throws IOException {
+        int printed = 0;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(r.open(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (grep != null && !grep.matcher(line).find()) continue;
+                out.println(prefix + line);
+                printed++;
+            }
+        }
+        return printed;
+    }
+}
@@ -0,0 +1,140 @@
+package infra;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Supervisa todas las etapas de una tubería mediante sus futuros onExit().
+ * Cuando una etapa termina se cierran las anteriores que sigan vivas, y al
+ * vencer el timeout se escala de destroy() a destroyForcibly() por plazos.
+ */
+public class PipelineSupervisor {
+    // Plazo entre la señal suave y la forzada
+    private static final long GRACE_MS = 200;
+
+    private final List<Process> stages;
+    private final boolean pipefail;
+    private final CompletableFuture<?>[] exits;
+    private volatile boolean timedOut;
+
+    public PipelineSupervisor(List<Process> stages, boolean pipefail) {
+        this.stages = stages;
+        this.pipefail = pipefail;
+        this.exits = new CompletableFuture<?>[stages.size()];
+
+        for (int i = 0; i < stages.size(); i++) {
+            final int idx = i;
+            Process p = stages.get(i);
+            // una etapa integrada ve el EOF antes de que se recoja el proceso
+            // anterior: si se cerrara enseguida, este acabaría con 143 sin motivo
+            exits[i] = p instanceof BuiltinProcess
+                    ? p.onExit().thenRun(() -> CompletableFuture.delayedExecutor(GRACE_MS, TimeUnit.MILLISECONDS)
+                            .execute(() -> terminateUpstream(idx)))
+                    : p.onExit().thenRun(() -> terminateUpstream(idx));
+        }
+    }
+
+    /**
+     * Espera a que terminen todas las etapas o a que venza el timeout y
+     * devuelve el resumen en el mismo formato que el resto de ejecuciones.
+     */
+    public String await(int timeout) throws InterruptedException {
+        TraceEvents.WaitEvent event = new TraceEvents.WaitEvent();
+        Trace.Span span = Trace.span(Trace.Phase.WAIT, event).pid(stages.get(stages.size() - 1).pid());
+        boolean finished = awaitAll(TimeUnit.MILLISECONDS.toNanos(timeout));
+        event.finished = finished;
+        span.end();
+
+        if (!finished) {
+            timedOut = true;
+            escalate(stages);
+            return summary("TIMEOUT:", timeout);
+        }
+
+        int failed = failedStage();
+        if (pipefail && failed >= 0) {
+            return summary("FAIL:", timeout);
+        }
+        return summary("OK:", timeout);
+    }
+
+    /**
+     * Índice de la etapa más a la derecha con código distinto de cero, como
+     * hace {@code set -o pipefail}, o -1 si todas terminaron bien.
+     */
+    public int failedStage() {
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            Process p = stages.get(i);
+            if (!p.isAlive() && p.exitValue() != 0) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Código de salida global: el de la última etapa o, con pipefail, el de la
+     * etapa fallida más a la derecha. Tras un timeout se devuelve 124.
+     */
+    public int exitStatus() {
+        Process last = stages.get(stages.size() - 1);
+        if (timedOut || stages.stream().anyMatch(Process::isAlive)) return ProcessManager.EXIT_TIMEOUT;
+        int failed = failedStage();
+        if (pipefail && failed >= 0) return stages.get(failed).exitValue();
+        return last.exitValue();
+    }
+
+    private boolean awaitAll(long nanos) throws InterruptedException {
+        try {
+            CompletableFuture.allOf(exits).get(nanos, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            // terminateUpstream no lanza; cualquier fallo se refleja en los códigos de salida
+            return stages.stream().noneMatch(Process::isAlive);
+        }
+    }
+
+    // Un consumidor que termina deja sin lector a los productores: se cierran
+    private void terminateUpstream(int idx) {
+        List<Process> upstream = stages.subList(0, idx).stream().filter(Process::isAlive).toList();
+        if (!upstream.isEmpty()) {
+            upstream.forEach(Process::destroy);
+            CompletableFuture.delayedExecutor(GRACE_MS, TimeUnit.MILLISECONDS)
+                    .execute(() -> upstream.forEach(p -> { if (p.isAlive()) p.destroyForcibly(); }));
+        }
+    }
+
+    private void escalate(List<Process> targets) throws InterruptedException {
+        for (Process p : targets) {
+            ProcessManager.traceKill(p.pid(), "timeout", false, () -> {
+                p.descendants().forEach(ProcessHandle::destroy);
+                p.destroy();
+            });
+        }
+        if (awaitAll(TimeUnit.MILLISECONDS.toNanos(GRACE_MS))) return;
+
+        for (Process p : targets) {
+            if (p.isAlive()) {
+                ProcessManager.traceKill(p.pid(), "timeout", true, () -> {
+                    p.descendants().forEach(ProcessHandle::destroyForcibly);
+                    p.destroyForcibly();
+                });
+            }
+        }
+        awaitAll(TimeUnit.MILLISECONDS.toNanos(GRACE_MS));
+    }
+
+    private String summary(String prefix, int timeout) {
+        StringBuilder sb = new StringBuilder(prefix);
+        for (int i = 0; i < stages.size(); i++) {
+            Process p = stages.get(i);
+            sb.append(" P").append(i + 1).append("=");
+            if (p.isAlive()) sb.append("stillAlive");
+            else sb.append(p.exitValue());
+        }
+        sb.append(" (");
+        if (pipefail) sb.append("pipefail, ");
+        sb.append("timeout=").append(timeout).append(")");
+        return sb.toString();
+    }
+}
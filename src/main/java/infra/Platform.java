@@ -4,10 +4,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class Platform {
-    public static List<String> wrapForShell() {
-        String osName = System.getProperty("os.name").toLowerCase();
+    public static boolean isWindows() {
+        return System.getProperty("os.name").toLowerCase().contains("win");
+    }
 
-        if (osName.contains("win")) {
+    public static List<String> wrapForShell() {
+        if (isWindows()) {
             return new ArrayList<>(List.of("cmd.exe", "/c"));
         }
         else {
@@ -0,0 +1,259 @@
+package infra;
+
+import domain.Job;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Muestreador en segundo plano de /proc/<pid>/stat y /proc/<pid>/status para
+ * los jobs registrados y sus descendientes. Un único hilo reutiliza el mismo
+ * buffer y analiza los bytes directamente, sin crear cadenas por muestra.
+ */
+public class ProcSampler {
+    public static final int HISTORY_SIZE = 60;
+    private static final long CLOCK_TICKS = 100;
+    private static final long DEFAULT_INTERVAL_MS = 1000;
+
+    private static final ConcurrentHashMap<Long, Samples> samples = new ConcurrentHashMap<>();
+    private static volatile long intervalMs = Long.getLong("stats.interval.ms", DEFAULT_INTERVAL_MS);
+    private static volatile Thread worker;
+
+    // Solo los usa el hilo del muestreador
+    private static final ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+    private static final long[] statFields = new long[2];
+    private static final long[] statusFields = new long[2];
+
+    /**
+     * Historial circular de un job: CPU%, RSS (kB) e hilos, agregados sobre el
+     * proceso y todos sus descendientes.
+     */
+    public static class Samples {
+        private final double[] cpu = new double[HISTORY_SIZE];
+        private final long[] rssKb = new long[HISTORY_SIZE];
+        private final int[] threads = new int[HISTORY_SIZE];
+        private int pos;
+        private int count;
+        private int processes;
+        private long lastTicks = -1;
+        private long lastNanos;
+
+        synchronized void add(long ticks, long nanos, long rss, int thr, int procs) {
+            double pct = 0;
+            if (lastTicks >= 0 && nanos > lastNanos) {
+                double cpuSeconds = (double) Math.max(0, ticks - lastTicks) / CLOCK_TICKS;
+                pct = cpuSeconds / ((nanos - lastNanos) / 1e9) * 100;
+            }
+            lastTicks = ticks;
+            lastNanos = nanos;
+
+            cpu[pos] = pct;
+            rssKb[pos] = rss;
+            threads[pos] = thr;
+            processes = procs;
+            pos = (pos + 1) % HISTORY_SIZE;
+            if (count < HISTORY_SIZE) count++;
+        }
+
+        private int last() {
+            return (pos - 1 + HISTORY_SIZE) % HISTORY_SIZE;
+        }
+
+        public synchronized double getCpu() { return count == 0 ? 0 : cpu[last()]; }
+        public synchronized long getRssKb() { return count == 0 ? 0 : rssKb[last()]; }
+        public synchronized int getThreads() { return count == 0 ? 0 : threads[last()]; }
+        public synchronized int getProcesses() { return processes; }
+        public synchronized int getCount() { return count; }
+
+        public synchronized double getCpuAvg() {
+            double sum = 0;
+            for (int i = 0; i < count; i++) sum += cpu[i];
+            return count == 0 ? 0 : sum / count;
+        }
+
+        public synchronized long getRssMaxKb() {
+            long max = 0;
+            for (int i = 0; i < count; i++) max = Math.max(max, rssKb[i]);
+            return max;
+        }
+    }
+
+    public static void start() {
+        if (worker != null) return;
+        synchronized (ProcSampler.class) {
+            if (worker != null) return;
+            Thread t = new Thread(ProcSampler::loop, "proc-sampler");
+            t.setDaemon(true);
+            t.start();
+            worker = t;
+        }
+    }
+
+    public static long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public static void setIntervalMs(long ms) {
+        intervalMs = Math.max(100, ms);
+    }
+
+    public static Samples getSamples(long pid) {
+        return samples.get(pid);
+    }
+
+    private static void loop() {
+        while (true) {
+            sampleAll();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(intervalMs));
+        }
+    }
+
+    private static void sampleAll() {
+        long now = System.nanoTime();
+        for (Job j : ProcessRegistry.getJobs()) {
+            if (!j.isAlive()) {
+                continue;
+            }
+            ProcessHandle.of(j.getPID()).ifPresent(ph -> sampleTree(j.getPID(), ph, now));
+        }
+        // se descartan historiales de jobs que ya no están registrados
+        samples.keySet().removeIf(pid -> !ProcessRegistry.findById(pid));
+    }
+
+    private static void sampleTree(long pid, ProcessHandle root, long now) {
+        long ticks = 0, rss = 0;
+        int thr = 0, procs = 0;
+
+        List<ProcessHandle> tree = new ArrayList<>();
+        tree.add(root);
+        root.descendants().forEach(tree::add);
+
+        for (ProcessHandle ph : tree) {
+            if (!readStat(ph.pid()) || !readStatus(ph.pid())) continue;
+            ticks += statFields[0] + statFields[1];
+            rss += statusFields[0];
+            thr += (int) statusFields[1];
+            procs++;
+        }
+        if (procs == 0) return;
+        samples.computeIfAbsent(pid, k -> new Samples()).add(ticks, now, rss, thr, procs);
+    }
+
+    // Lee el fichero completo en el buffer compartido
+    private static boolean read(long pid, String file) {
+        buffer.clear();
+        try (FileChannel ch = FileChannel.open(Path.of("/proc", Long.toString(pid), file), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && ch.read(buffer) > 0) { }
+        } catch (IOException e) {
+            return false;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * utime y stime (campos 14 y 15). Se cuentan a partir del último ')' porque
+     * el nombre del ejecutable puede contener espacios y paréntesis.
+     */
+    private static boolean readStat(long pid) {
+        if (!read(pid, "stat")) return false;
+        int limit = buffer.limit();
+        int i = limit - 1;
+        while (i >= 0 && buffer.get(i) != ')') i--;
+        if (i < 0) return false;
+
+        int field = 2; // el ')' cierra el campo 2
+        i++;
+        while (i < limit && field < 15) {
+            if (buffer.get(i) == ' ') {
+                field++;
+                i++;
+                if (field == 14 || field == 15) {
+                    long v = 0;
+                    while (i < limit && buffer.get(i) != ' ') {
+                        v = v * 10 + (buffer.get(i) - '0');
+                        i++;
+                    }
+                    statFields[field - 14] = v;
+                }
+            } else {
+                i++;
+            }
+        }
+        return field == 15;
+    }
+
+    // VmRSS (kB) y Threads
+    private static boolean readStatus(long pid) {
+        if (!read(pid, "status")) return false;
+        statusFields[0] = 0;
+        statusFields[1] = 0;
+        int limit = buffer.limit();
+        int lineStart = 0;
+        for (int i = 0; i < limit; i++) {
+            if (buffer.get(i) != '\n') continue;
+            if (startsWith(lineStart, "VmRSS:")) statusFields[0] = parseNumber(lineStart + 6, i);
+            else if (startsWith(lineStart, "Threads:")) statusFields[1] = parseNumber(lineStart + 8, i);
+            lineStart = i + 1;
+        }
+        return true;
+    }
+
+    private static boolean startsWith(int offset, String prefix) {
+        if (offset + prefix.length() > buffer.limit()) return false;
+        for (int k = 0; k < prefix.length(); k++) {
+            if (buffer.get(offset + k) != prefix.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    private static long parseNumber(int from, int to) {
+        long v = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') v = v * 10 + (b - '0');
+            else if (v > 0) break;
+        }
+        return v;
+    }
+
+    /**
+     * Vista tipo top de los jobs vivos ordenada por CPU.
+     */
+    public static String render() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-10s%-8s%-8s%-10s%-10s%-6s%-6s%s%n",
+                "PID", "CPU%", "CPU%avg", "RSS(MB)", "RSSmax", "THR", "PROC", "COMANDO"));
+
+        List<Job> alive = ProcessRegistry.getJobs().stream()
+                .filter(Job::isAlive)
+                .filter(j -> samples.containsKey(j.getPID()))
+                .sorted(Comparator.comparingDouble((Job j) -> samples.get(j.getPID()).getCpu()).reversed())
+                .toList();
+
+        for (Job j : alive) {
+            Samples s = samples.get(j.getPID());
+            if (s == null) continue;
+            sb.append(String.format("%-10d%-8.1f%-8.1f%-10.1f%-10.1f%-6d%-6d%s%n",
+                    j.getPID(),
+                    s.getCpu(),
+                    s.getCpuAvg(),
+                    s.getRssKb() / 1024.0,
+                    s.getRssMaxKb() / 1024.0,
+                    s.getThreads(),
+                    s.getProcesses(),
+                    j.getCmd()));
+        }
+        sb.append("intervalo=").append(intervalMs).append("ms jobs vivos=").append(alive.size());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,216 @@
+package infra;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Foto de la tabla de procesos del sistema tomada en una sola pasada por
+ * /proc (o por ProcessHandle.allProcesses() fuera de Linux). El árbol padre →
+ * hijos se construye una vez y todas las consultas de {@code details} y
+ * {@code jobs --long} salen de la misma foto, que se reutiliza durante
+ * {@code proc.snapshot.ttl.ms}.
+ */
+public class ProcSnapshot {
+    private static final long TTL_MS = Long.getLong("proc.snapshot.ttl.ms", 500);
+    private static final long CLOCK_TICKS = 100;
+    private static final long PAGE_KB = 4;
+    private static final Path PROC = Path.of("/proc");
+
+    private static volatile ProcSnapshot cached;
+    // Solo se usa dentro de take(), que está sincronizado
+    private static final ByteBuffer buffer = ByteBuffer.allocateDirect(8192);
+    private static Map<Integer, String> users;
+
+    private final Map<Long, ProcInfo> processes;
+    private final Map<Long, List<Long>> children = new HashMap<>();
+    private final long takenAt = System.nanoTime();
+    private final long scanMicros;
+
+    /**
+     * Datos de un proceso. Los campos que no se pueden leer quedan a null o -1.
+     */
+    public record ProcInfo(long pid, long ppid, char state, String command,
+                           Instant start, Duration cpu, int threads, long rssKb) { }
+
+    private ProcSnapshot(Map<Long, ProcInfo> processes, long scanMicros) {
+        this.processes = processes;
+        this.scanMicros = scanMicros;
+        for (ProcInfo p : processes.values()) {
+            children.computeIfAbsent(p.ppid(), k -> new ArrayList<>()).add(p.pid());
+        }
+    }
+
+    /**
+     * Foto en caché si no ha caducado; si no, se toma una nueva.
+     */
+    public static ProcSnapshot get() {
+        ProcSnapshot s = cached;
+        if (s != null && s.ageMs() < TTL_MS) return s;
+        synchronized (ProcSnapshot.class) {
+            s = cached;
+            if (s == null || s.ageMs() >= TTL_MS) {
+                s = take();
+                cached = s;
+            }
+            return s;
+        }
+    }
+
+    public static synchronized ProcSnapshot take() {
+        long t0 = System.nanoTime();
+        Map<Long, ProcInfo> processes = Files.isDirectory(PROC) ? scanProc() : scanHandles();
+        return new ProcSnapshot(processes, (System.nanoTime() - t0) / 1000);
+    }
+
+    public Optional<ProcInfo> get(long pid) {
+        return Optional.ofNullable(processes.get(pid));
+    }
+
+    public List<Long> children(long pid) {
+        return children.getOrDefault(pid, List.of());
+    }
+
+    public List<Long> descendants(long pid) {
+        List<Long> result = new ArrayList<>();
+        ArrayDeque<Long> pending = new ArrayDeque<>(children(pid));
+        while (!pending.isEmpty()) {
+            long p = pending.poll();
+            result.add(p);
+            pending.addAll(children(p));
+        }
+        return result;
+    }
+
+    public int size() {
+        return processes.size();
+    }
+
+    public long ageMs() {
+        return (System.nanoTime() - takenAt) / 1_000_000;
+    }
+
+    public long getScanMicros() {
+        return scanMicros;
+    }
+
+    private static Map<Long, ProcInfo> scanProc() {
+        Map<Long, ProcInfo> result = new HashMap<>();
+        long bootMillis = bootTimeMillis();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(PROC)) {
+            for (Path dir : dirs) {
+                String name = dir.getFileName().toString();
+                if (name.isEmpty() || !Character.isDigit(name.charAt(0))) continue;
+                readProc(Long.parseLong(name), dir, bootMillis).ifPresent(p -> result.put(p.pid(), p));
+            }
+        } catch (IOException e) {
+            return scanHandles();
+        }
+        return result;
+    }
+
+    /**
+     * Lee /proc/<pid>/stat y cmdline en el buffer compartido. Los campos de
+     * stat se cuentan a partir del último ')' porque el nombre puede contener
+     * espacios y paréntesis.
+     */
+    private static Optional<ProcInfo> readProc(long pid, Path dir, long bootMillis) {
+        try {
+            String stat = read(dir.resolve("stat"), StandardCharsets.US_ASCII);
+            int close = stat.lastIndexOf(')');
+            String comm = stat.substring(stat.indexOf('(') + 1, close);
+            String[] f = stat.substring(close + 2).split(" ");
+
+            String command = read(dir.resolve("cmdline"), StandardCharsets.UTF_8).replace('\0', ' ').strip();
+            if (command.isEmpty()) command = "[" + comm + "]";
+
+            long ticks = Long.parseLong(f[11]) + Long.parseLong(f[12]);
+            Instant start = bootMillis < 0 ? null
+                    : Instant.ofEpochMilli(bootMillis + Long.parseLong(f[19]) * 1000 / CLOCK_TICKS);
+            return Optional.of(new ProcInfo(pid, Long.parseLong(f[1]), f[0].charAt(0), command, start,
+                    Duration.ofMillis(ticks * 1000 / CLOCK_TICKS), Integer.parseInt(f[17]),
+                    Long.parseLong(f[21]) * PAGE_KB));
+        } catch (IOException | RuntimeException e) {
+            // el proceso terminó durante la lectura
+            return Optional.empty();
+        }
+    }
+
+    // Un FileChannel sobre un buffer reutilizado cuesta la mitad que Files.readAllBytes en /proc
+    private static String read(Path file, Charset charset) throws IOException {
+        buffer.clear();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && ch.read(buffer) > 0) { }
+        }
+        buffer.flip();
+        return charset.decode(buffer).toString();
+    }
+
+    /**
+     * Usuario propietario del proceso. Solo lo necesita {@code details}, así
+     * que no se lee durante el recorrido.
+     */
+    public String user(long pid) {
+        if (!processes.containsKey(pid)) return null;
+        try {
+            Path dir = PROC.resolve(Long.toString(pid));
+            if (Files.isDirectory(dir)) return userName((Integer) Files.getAttribute(dir, "unix:uid"));
+            return ProcessHandle.of(pid).flatMap(ph -> ph.info().user()).orElse(null);
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static long bootTimeMillis() {
+        try {
+            for (String line : Files.readAllLines(PROC.resolve("stat"))) {
+                if (line.startsWith("btime ")) return Long.parseLong(line.substring(6).trim()) * 1000;
+            }
+        } catch (IOException | NumberFormatException ignored) { }
+        return -1;
+    }
+
+    private static synchronized String userName(int uid) {
+        if (users == null) {
+            users = new HashMap<>();
+            try {
+                for (String line : Files.readAllLines(Path.of("/etc/passwd"))) {
+                    String[] parts = line.split(":");
+                    if (parts.length > 2) users.putIfAbsent(Integer.parseInt(parts[2]), parts[0]);
+                }
+            } catch (IOException | NumberFormatException ignored) { }
+        }
+        return users.getOrDefault(uid, Integer.toString(uid));
+    }
+
+    // Fuera de Linux: misma foto a partir de ProcessHandle
+    private static Map<Long, ProcInfo> scanHandles() {
+        Map<Long, ProcInfo> result = new HashMap<>();
+        ProcessHandle.allProcesses().forEach(ph -> {
+            ProcessHandle.Info info = ph.info();
+            String command = info.commandLine().orElse(info.command().orElse("<unknown>"));
+            result.put(ph.pid(), new ProcInfo(ph.pid(),
+                    ph.parent().map(ProcessHandle::pid).orElse(0L),
+                    '-',
+                    command,
+                    info.startInstant().orElse(null),
+                    info.totalCpuDuration().orElse(null),
+                    -1, -1));
+        });
+        return result;
+    }
+}
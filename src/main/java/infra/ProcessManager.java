@@ -1,57 +1,125 @@
 package infra;
 
 import domain.Job;
+import domain.JobState;
+import domain.ResourceLimits;
 import util.StreamGobbler;
 
-import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.time.Instant;
-import java.time.LocalDateTime;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class ProcessManager {
+    private static final long GOBBLER_DRAIN_MS = 200;
+    private static final long KILL_GRACE_MS = 500;
+
+    // Código de salida convencional para timeouts (como timeout(1)) y para errores de lanzamiento
+    public static final int EXIT_TIMEOUT = 124;
+    public static final int EXIT_ERROR = -1;
+
+    // Último código de salida observado por el hilo llamante (lo usa el modo batch)
+    private static final ThreadLocal<Integer> lastExitCode = new ThreadLocal<>();
+
+    public static Integer getLastExitCode() {
+        return lastExitCode.get();
+    }
+
+    static void setLastExitCode(int code) {
+        lastExitCode.set(code);
+    }
+
+    public static void clearLastExitCode() {
+        lastExitCode.remove();
+    }
+
     public static String execCommandWithTimeout(List<String> cmd, int timeout, String fileIn, String fileOut, String fileErr) {
-        ProcessBuilder pb = initProcessBuilder(cmd);
-        if (pb == null) return "Error: No se ha introducido ningún comando para ejecutar";
+        return execCommandWithTimeout(cmd, timeout, fileIn, fileOut, fileErr, ResourceLimits.NONE);
+    }
+
+    /**
+     * Ejecuta el comando con límites de recursos. Con límites no se usa el
+     * pool de shells: los ulimit se quedarían en la shell reutilizada.
+     */
+    public static String execCommandWithTimeout(List<String> cmd, int timeout, String fileIn, String fileOut,
+                                                String fileErr, ResourceLimits limits) {
+        if (cmd == null || cmd.isEmpty()) return "Error: No se ha introducido ningún comando para ejecutar";
+        ResourceLimiter.Applied applied;
+        try {
+            applied = ResourceLimiter.prepare(limits);
+        } catch (IOException e) {
+            lastExitCode.set(EXIT_ERROR);
+            return "Error: " + e.getMessage();
+        }
+        String jobCmd = String.join(" ", cmd);
+        ProcessBuilder pb = initProcessBuilder(applied == null ? cmd : applied.wrap(cmd));
+
+        if (ShellPool.isEnabled() && applied == null) {
+            String script = ShellPool.withRedirects(ShellPool.scriptOf(cmd), fileIn, fileOut, fileErr);
+            return execInShellPool(script, timeout);
+        }
 
-        if (fileIn == null) pb.redirectInput(ProcessBuilder.Redirect.INHERIT);
-        else pb.redirectInput(new File(fileIn));
+        if (fileIn == null) pb.redirectInput(inputRedirect());
+        else pb.redirectInput(Session.current().resolve(fileIn));
 
-        if (fileOut == null) pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
-        else pb.redirectOutput(new File(fileOut));
+        if (fileOut == null) pb.redirectOutput(outputRedirect());
+        else pb.redirectOutput(Session.current().resolve(fileOut));
 
-        if (fileErr == null) pb.redirectError(ProcessBuilder.Redirect.INHERIT);
-        else pb.redirectError(new File(fileErr));
+        if (fileErr == null) pb.redirectError(outputRedirect());
+        else pb.redirectError(Session.current().resolve(fileErr));
 
+        Process p;
         try {
-            Process p = pb.start();
-            ProcessRegistry.addJob(
-                    new Job(p.pid(),
-                            LocalDateTime.now(),
-                            String.join(" ", pb.command())
-                    )
-            );
-            boolean finalizado = p.waitFor(timeout, TimeUnit.MILLISECONDS);
+            p = spawn(pb);
+        } catch (IOException e) {
+            ResourceLimiter.release(applied);
+            lastExitCode.set(EXIT_ERROR);
+            return "ERROR: " + e.getMessage();
+        }
+        try {
+            ProcessRegistry.addJob(p, jobCmd, applied);
+            List<Runnable> drains = connectSession(p, pb, true, true);
+            boolean finalizado = ExecutionEngine.awaitExit(p, timeout);
 
             if (finalizado) {
+                drains.forEach(Runnable::run);
+                lastExitCode.set(p.exitValue());
                 return "OK: Exit=" + p.exitValue() + "(timeout="+ timeout + ")";
             } else {
-                p.destroy();
+                ProcessRegistry.getJob(p.pid()).ifPresent(j -> j.setCausaFin(JobState.TIMED_OUT));
+                traceKill(p.pid(), "timeout", false, p::destroy);
                 if (p.isAlive()) {
-                    p.destroyForcibly();
+                    traceKill(p.pid(), "timeout", true, p::destroyForcibly);
                 }
+                // exitValue() falla si la señal aún no ha terminado el proceso
+                p.waitFor();
+                drains.forEach(Runnable::run);
+                lastExitCode.set(EXIT_TIMEOUT);
                 return "TIMEOUT: Exit=" + p.exitValue() + "(timeout="+ timeout + ")";
             }
-        } catch (InterruptedException | IOException e) {
+        } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            lastExitCode.set(EXIT_ERROR);
             return "ERROR: " + e.getMessage();
         }
     }
 
     public static String buildPipeline(List<List<String>> cmd, int timeout, String fileIn, String fileOut, String fileErr) {
+        return buildPipeline(cmd, timeout, fileIn, fileOut, fileErr, false);
+    }
+
+    public static String buildPipeline(List<List<String>> cmd, int timeout, String fileIn, String fileOut, String fileErr, boolean pipefail) {
         if (cmd.size() < 2) return "Error: La tubería introducida no es válida";
 
         List<ProcessBuilder> pipeCommand = new ArrayList<>();
@@ -61,111 +129,289 @@ public class ProcessManager {
             command.addAll(cmd.get(i));
 
             ProcessBuilder pb = new ProcessBuilder(command);
+            Session.current().apply(pb);
 
 
 
             if (i == 0) {
-                if (fileIn == null) pb.redirectInput(ProcessBuilder.Redirect.INHERIT);
-                else pb.redirectInput(new File(fileIn));
+                if (fileIn == null) pb.redirectInput(inputRedirect());
+                else pb.redirectInput(Session.current().resolve(fileIn));
             } else {
                 pb.redirectInput(ProcessBuilder.Redirect.PIPE);
             }
 
             if (i == cmd.size() - 1) {
-                if (fileOut == null) pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
-                else pb.redirectOutput(new File(fileOut));
-                if (fileErr == null) pb.redirectError(ProcessBuilder.Redirect.INHERIT);
-                else pb.redirectError(new File(fileErr));
+                if (fileOut == null) pb.redirectOutput(outputRedirect());
+                else pb.redirectOutput(Session.current().resolve(fileOut));
+                if (fileErr == null) pb.redirectError(outputRedirect());
+                else pb.redirectError(Session.current().resolve(fileErr));
             } else {
                 pb.redirectOutput(ProcessBuilder.Redirect.PIPE);
-                // errores intermedios se pueden heredar o redirigir a PIPE; se deja heredar para simplicidad
-                pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+                // los errores intermedios van al terminal (o a la sesión remota)
+                pb.redirectError(outputRedirect());
             }
 
             pipeCommand.add(pb);
         }
 
-        return executePipeline(pipeCommand, timeout);
+        // la primera etapa sin IN leería del terminal: esa siempre se deja a la shell
+        BuiltinStage[] builtins = new BuiltinStage[cmd.size()];
+        boolean anyBuiltin = false;
+        for (int i = fileIn == null ? 1 : 0; i < cmd.size(); i++) {
+            builtins[i] = BuiltinStage.parse(String.join(" ", cmd.get(i))).orElse(null);
+            anyBuiltin |= builtins[i] != null;
+        }
+        if (anyBuiltin) {
+            return executeMixedPipeline(pipeCommand, builtins, timeout, pipefail, fileIn, fileOut, fileErr);
+        }
+        return executePipeline(pipeCommand, timeout, pipefail);
     }
 
-    private static String executePipeline(List<ProcessBuilder> cmd, int timeout) {
+    private static String executePipeline(List<ProcessBuilder> cmd, int timeout, boolean pipefail) {
         try {
-            // Iniciar pipeline (Java 9+)
+            // Iniciar pipeline (Java 9+) y vigilar todas las etapas, no solo la última
+            Trace.Span spawn = Trace.span(Trace.Phase.SPAWN, new TraceEvents.SpawnEvent());
             List<Process> processes = ProcessBuilder.startPipeline(cmd);
+            spawn.pid(processes.getLast().pid())
+                    .command(cmd.stream().map(pb -> String.join(" ", pb.command())).collect(Collectors.joining(" | ")))
+                    .end();
+            List<Runnable> drains = new ArrayList<>();
+            for (int i = 0; i < processes.size(); i++) {
+                drains.addAll(connectSession(processes.get(i), cmd.get(i), i == 0, i == processes.size() - 1));
+            }
+            PipelineSupervisor supervisor = new PipelineSupervisor(processes, pipefail);
+            String result = supervisor.await(timeout);
+            drains.forEach(Runnable::run);
+            lastExitCode.set(supervisor.exitStatus());
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lastExitCode.set(EXIT_ERROR);
+            return "ERROR: Interrupted";
+        } catch (IOException e) {
+            lastExitCode.set(EXIT_ERROR);
+            return "ERROR: " + e.getMessage();
+        }
+    }
 
-            // Esperar con timeout: comprobamos el último proceso principalmente,
-            // pero debemos forzar finalización de todos si se excede el tiempo.
-            Process last = processes.getLast();
-            boolean finished = last.waitFor(timeout, TimeUnit.MILLISECONDS);
-
-            if (finished) {
-                StringBuilder sb = new StringBuilder("OK:");
-                for (int i = 0; i < processes.size(); i++) {
-                    Process process = processes.get(i);
-                    sb.append(" P").append(i+1).append("=").append(process.exitValue());
-                }
-                sb.append(" (timeout=").append(timeout).append(")");
-                return sb.toString();
-            } else {
-                // timeout: destruir todos
-                for (Process p : processes) {
-                    p.destroy();
+    /**
+     * Tubería con etapas integradas. Los tramos de procesos consecutivos se
+     * conectan entre sí con startPipeline, como en {@link #executePipeline}; una
+     * etapa integrada lee del stdout del proceso anterior (o de un Pipe de NIO
+     * si la anterior también es integrada) y escribe en el stdin del siguiente.
+     */
+    private static String executeMixedPipeline(List<ProcessBuilder> cmd, BuiltinStage[] builtins, int timeout,
+                                               boolean pipefail, String fileIn, String fileOut, String fileErr) {
+        int n = cmd.size();
+        Session session = Session.current();
+        Process[] processes = new Process[n];
+        Pipe[] links = new Pipe[n];
+        List<Runnable> drains = new ArrayList<>();
+        Trace.Span spawn = Trace.span(Trace.Phase.SPAWN, new TraceEvents.SpawnEvent());
+        try {
+            for (int i = 0; i < n; ) {
+                if (builtins[i] != null) {
+                    i++;
+                    continue;
                 }
-                // esperar un breve periodo y forzar si aún hay vivos
-                Thread.sleep(200);
-                for (Process p : processes) {
-                    if (p.isAlive()) p.destroyForcibly();
+                int j = i;
+                while (j < n && builtins[j] == null) j++;
+                List<Process> segment = ProcessBuilder.startPipeline(cmd.subList(i, j));
+                for (int k = i; k < j; k++) {
+                    processes[k] = segment.get(k - i);
+                    drains.addAll(connectSession(processes[k], cmd.get(k), k == 0, k == n - 1));
                 }
-                StringBuilder sb = new StringBuilder("TIMEOUT:");
-                for (int i = 0; i < processes.size(); i++) {
-                    try { sb.append(" P").append(i+1).append("=").append(processes.get(i).exitValue()); }
-                    catch (IllegalThreadStateException e) { sb.append(" P").append(i+1).append("=stillAlive"); }
+                i = j;
+            }
+
+            for (int i = 0; i < n; i++) {
+                if (builtins[i] == null) continue;
+                ReadableByteChannel in;
+                if (i == 0) in = FileChannel.open(session.resolve(fileIn).toPath(), StandardOpenOption.READ);
+                else if (builtins[i - 1] == null) in = BuiltinStage.channel(processes[i - 1].getInputStream());
+                else in = links[i - 1].source();
+
+                WritableByteChannel out;
+                if (i < n - 1 && builtins[i + 1] == null) {
+                    out = BuiltinStage.channel(processes[i + 1].getOutputStream());
+                } else if (i < n - 1) {
+                    links[i] = Pipe.open();
+                    out = links[i].sink();
+                } else if (fileOut != null) {
+                    out = FileChannel.open(session.resolve(fileOut).toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                } else {
+                    out = BuiltinStage.channel(sessionStream(OutputCapture.tee(session.out())));
                 }
-                sb.append(" (timeout=").append(timeout).append(")");
-                return sb.toString();
+
+                boolean ownErr = i == n - 1 && fileErr != null;
+                PrintStream err = ownErr
+                        ? new PrintStream(new FileOutputStream(session.resolve(fileErr)), true)
+                        : OutputCapture.tee(session.err());
+                processes[i] = new BuiltinProcess(builtins[i], in, out, err, ownErr).start();
             }
+        } catch (IOException e) {
+            spawn.end();
+            for (Process p : processes) {
+                if (p != null) p.destroyForcibly();
+            }
+            lastExitCode.set(EXIT_ERROR);
+            return "ERROR: " + e.getMessage();
+        }
+        spawn.pid(processes[n - 1].pid())
+                .command(IntStream.range(0, n)
+                        .mapToObj(i -> builtins[i] != null ? builtins[i].toString() : String.join(" ", cmd.get(i).command()))
+                        .collect(Collectors.joining(" | ")))
+                .end();
+
+        try {
+            PipelineSupervisor supervisor = new PipelineSupervisor(List.of(processes), pipefail);
+            String result = supervisor.await(timeout);
+            drains.forEach(Runnable::run);
+            lastExitCode.set(supervisor.exitStatus());
+            return result;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            lastExitCode.set(EXIT_ERROR);
             return "ERROR: Interrupted";
-        } catch (IOException e) {
-            return "ERROR: " + e.getMessage();
         }
     }
 
+    // La salida de la sesión no se cierra al terminar la etapa, solo se vacía
+    private static OutputStream sessionStream(OutputStream target) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                target.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                target.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                target.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                target.flush();
+            }
+        };
+    }
+
+    // En consola se hereda el terminal; una sesión remota recibe la E/S por tubería
+    private static ProcessBuilder.Redirect inputRedirect() {
+        return Session.current().isConsole() ? ProcessBuilder.Redirect.INHERIT : ProcessBuilder.Redirect.PIPE;
+    }
+
+    // Si se está capturando la salida para last, también en consola pasa por la JVM
+    private static ProcessBuilder.Redirect outputRedirect() {
+        return Session.current().isConsole() && !OutputCapture.isRecording()
+                ? ProcessBuilder.Redirect.INHERIT : ProcessBuilder.Redirect.PIPE;
+    }
+
+    /**
+     * Conecta a la sesión (y a la captura en curso) los flujos que se dejaron
+     * en PIPE por {@link #inputRedirect()} y {@link #outputRedirect()}.
+     * Devuelve las acciones que vacían esos flujos una vez terminado el proceso.
+     */
+    private static List<Runnable> connectSession(Process p, ProcessBuilder pb, boolean connectIn, boolean connectOut) {
+        Session session = Session.current();
+        List<Runnable> drains = new ArrayList<>();
+        Trace.Span firstByte = firstByteSpan(p, pb);
+        if (connectIn && pb.redirectInput() == ProcessBuilder.Redirect.PIPE) {
+            // los clientes remotos no envían stdin: el proceso ve EOF
+            try { p.getOutputStream().close(); } catch (IOException ignored) {}
+        }
+        if (connectOut && pb.redirectOutput() == ProcessBuilder.Redirect.PIPE) {
+            StreamGobbler g = StreamGobbler.raw(p.getInputStream(), OutputCapture.tee(session.out()))
+                    .onFirstByte(firstByte::end);
+            Future<Void> f = ExecutionEngine.pump(g);
+            drains.add(() -> g.drain(f, GOBBLER_DRAIN_MS));
+        }
+        if (pb.redirectError() == ProcessBuilder.Redirect.PIPE) {
+            StreamGobbler g = StreamGobbler.raw(p.getErrorStream(), OutputCapture.tee(session.err()))
+                    .onFirstByte(firstByte::end);
+            Future<Void> f = ExecutionEngine.pump(g);
+            drains.add(() -> g.drain(f, GOBBLER_DRAIN_MS));
+        }
+        return drains;
+    }
+
+    // ProcessBuilder.start con su evento de traza
+    private static Process spawn(ProcessBuilder pb) throws IOException {
+        Trace.Span span = Trace.span(Trace.Phase.SPAWN, new TraceEvents.SpawnEvent());
+        Process p = pb.start();
+        span.pid(p.pid()).command(String.join(" ", pb.command())).end();
+        return p;
+    }
+
+    // Tramo desde que se conectan los gobblers hasta el primer byte de stdout o stderr
+    private static Trace.Span firstByteSpan(Process p, ProcessBuilder pb) {
+        return Trace.span(Trace.Phase.FIRST_BYTE, new TraceEvents.FirstByteEvent())
+                .pid(p.pid())
+                .command(String.join(" ", pb.command()));
+    }
+
+    /**
+     * Ejecuta una acción de terminación (destroy, destroyForcibly...) dentro de
+     * un evento de traza con el motivo y si es forzada.
+     */
+    static void traceKill(long pid, String reason, boolean forced, Runnable action) {
+        TraceEvents.KillEvent event = new TraceEvents.KillEvent();
+        event.reason = reason;
+        event.forced = forced;
+        Trace.Span span = Trace.span(Trace.Phase.KILL, event)
+                .pid(pid)
+                .command(ProcessRegistry.getJob(pid).map(Job::getCmd).orElse(null));
+        action.run();
+        span.end();
+    }
+
     private static ProcessBuilder initProcessBuilder(List<String> cmd) {
         if (cmd.isEmpty()) {
             return null;
         }
 
-        return new ProcessBuilder(cmd);
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        Session.current().apply(pb);
+        return pb;
     }
 
     public static String execCommandWithTimeoutUsingGobbler(List<String> cmd, int timeout) {
         ProcessBuilder pb = initProcessBuilder(cmd);
         if (pb == null) return "Error: No se ha introducido ningún comando para ejecutar";
 
-        pb.redirectErrorStream(true); // combinar stdout y stderr si quieres un solo gobbler
-        ExecutorService exec = Executors.newFixedThreadPool(1); // 1 si unificas streams, o 2 para stdout+stderr
+        if (ShellPool.isEnabled()) {
+            return execInShellPool(ShellPool.scriptOf(cmd), timeout);
+        }
+
+        // stdout y stderr por separado, copiando bytes sin decodificar
         Process process = null;
-        Future<Void> gobblerFuture = null;
+        Future<Void> outFuture = null;
+        Future<Void> errFuture = null;
 
         try {
-            process = pb.start();
-            ProcessRegistry.addJob(
-                    new Job(process.pid(),
-                            LocalDateTime.now(),
-                            String.join(" ", pb.command())
-                    )
-            );
-            StreamGobbler gobbler = new StreamGobbler(process.getInputStream(), System.out);
-            gobblerFuture = exec.submit(gobbler);
-
-            boolean finished = process.waitFor(timeout, TimeUnit.MILLISECONDS);
+            process = spawn(pb);
+            ProcessRegistry.addJob(process, String.join(" ", pb.command()));
+            Trace.Span firstByte = firstByteSpan(process, pb);
+            StreamGobbler outGobbler = StreamGobbler.raw(process.getInputStream(), OutputCapture.tee(Session.current().out()))
+                    .onFirstByte(firstByte::end);
+            StreamGobbler errGobbler = StreamGobbler.raw(process.getErrorStream(), OutputCapture.tee(Session.current().err()))
+                    .onFirstByte(firstByte::end);
+            outFuture = ExecutionEngine.pump(outGobbler);
+            errFuture = ExecutionEngine.pump(errGobbler);
+
+            boolean finished = ExecutionEngine.awaitExit(process, timeout);
             if (finished) {
                 int exit = process.exitValue();
-                // esperar al gobbler un corto tiempo para consumir lo que queda
-                gobbler.stop();
-                try { gobblerFuture.get(200, TimeUnit.MILLISECONDS); } catch (TimeoutException | InterruptedException | ExecutionException ignored) {}
+                // consumir lo que quede en las tuberías antes de devolver el control
+                outGobbler.drain(outFuture, GOBBLER_DRAIN_MS);
+                errGobbler.drain(errFuture, GOBBLER_DRAIN_MS);
+                lastExitCode.set(exit);
                 return "OK: Exit=" + exit + " (timeout=" + timeout + ")";
             } else {
                 // intentar matar descendientes (Java 9+)
@@ -176,21 +422,24 @@ public class ProcessManager {
                     });
                 } catch (Throwable ignored) {}
 
-                process.destroy();
-                Thread.sleep(50);
-                if (process.isAlive()) process.destroyForcibly();
+                traceKill(process.pid(), "timeout", false, process::destroy);
+                if (!process.waitFor(50, TimeUnit.MILLISECONDS)) {
+                    traceKill(process.pid(), "timeout", true, process::destroyForcibly);
+                }
 
-                // cerrar streams y detener gobbler
-                gobbler.stop();
-                try { gobblerFuture.get(200, TimeUnit.MILLISECONDS); } catch (TimeoutException | InterruptedException | ExecutionException ignored) {}
+                // los bytes ya escritos en la tubería se siguen entregando hasta el plazo
+                outGobbler.drain(outFuture, GOBBLER_DRAIN_MS);
+                errGobbler.drain(errFuture, GOBBLER_DRAIN_MS);
+                lastExitCode.set(EXIT_TIMEOUT);
                 return "TIMEOUT: (timeout=" + timeout + ")";
             }
         } catch (IOException | InterruptedException e) {
             Thread.currentThread().interrupt();
+            lastExitCode.set(EXIT_ERROR);
             return "ERROR: " + e.getMessage();
         } finally {
-            if (gobblerFuture != null && !gobblerFuture.isDone()) gobblerFuture.cancel(true);
-            exec.shutdownNow();
+            if (outFuture != null && !outFuture.isDone()) outFuture.cancel(true);
+            if (errFuture != null && !errFuture.isDone()) errFuture.cancel(true);
             if (process != null) {
                 try { process.getInputStream().close(); } catch (IOException ignored) {}
                 try { process.getErrorStream().close(); } catch (IOException ignored) {}
@@ -199,45 +448,212 @@ public class ProcessManager {
         }
     }
 
-    public static String runBackgroundCommand(List<String> cmd, String commandExecuted) {
+    /**
+     * Ejecuta el comando volcando stdout y stderr en {@code sink} y devuelve el
+     * código de salida ({@link #EXIT_TIMEOUT} si vence el plazo). Lo usa
+     * {@code parallel} para guardar la salida de cada elemento por separado.
+     */
+    public static int execCaptured(List<String> cmd, int timeout, OutputStream sink) {
         ProcessBuilder pb = initProcessBuilder(cmd);
-        if (pb == null) return "Error: No se ha introducido ningún comando para ejecutar";
+        if (pb == null) return EXIT_ERROR;
+
+        if (ShellPool.isEnabled()) {
+            try {
+                int exit = ShellPool.get().run(ShellPool.scriptOf(cmd), new PrintStream(sink, true), timeout);
+                return exit == ShellPool.TIMED_OUT ? EXIT_TIMEOUT : exit;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return EXIT_ERROR;
+            } catch (IOException e) {
+                return EXIT_ERROR;
+            }
+        }
 
-        // El método devuelve el path a los logs directamente con un String
-        String pathToLogs = ActivityLogger.createLogForCommand(pb);
+        pb.redirectErrorStream(true);
+        try {
+            Process process = spawn(pb);
+            ProcessRegistry.addJob(process, String.join(" ", pb.command()));
+            process.getOutputStream().close();
+            StreamGobbler gobbler = StreamGobbler.raw(process.getInputStream(), sink)
+                    .onFirstByte(firstByteSpan(process, pb)::end);
+            Future<Void> future = ExecutionEngine.pump(gobbler);
+
+            boolean finished = ExecutionEngine.awaitExit(process, timeout);
+            if (!finished) {
+                ProcessRegistry.getJob(process.pid()).ifPresent(j -> j.setCausaFin(JobState.TIMED_OUT));
+                terminateTree(process.toHandle());
+            }
+            gobbler.drain(future, GOBBLER_DRAIN_MS);
+            return finished ? process.exitValue() : EXIT_TIMEOUT;
+        } catch (IOException e) {
+            return EXIT_ERROR;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_ERROR;
+        }
+    }
 
+    // Modo rápido: el comando se ejecuta en una shell ya arrancada del pool
+    private static String execInShellPool(String script, int timeout) {
         try {
-            Process process = pb.start();
-            ProcessRegistry.addJob(
-                    new Job(process.pid(),
-                            LocalDateTime.now(),
-                            commandExecuted
-                    )
-            );
+            int exit = ShellPool.get().run(script, OutputCapture.tee(Session.current().out()), timeout);
+            if (exit == ShellPool.TIMED_OUT) {
+                lastExitCode.set(EXIT_TIMEOUT);
+                return "TIMEOUT: (timeout=" + timeout + ")";
+            }
+            lastExitCode.set(exit);
+            return "OK: Exit=" + exit + " (timeout=" + timeout + ")";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lastExitCode.set(EXIT_ERROR);
+            return "ERROR: Interrupted";
+        } catch (IOException e) {
+            lastExitCode.set(EXIT_ERROR);
+            return "ERROR: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Compara la latencia media de lanzar {@code script} con {@code bash -lc}
+     * frente a una shell del pool.
+     */
+    public static String benchmarkShellPool(String script, int iterations) {
+        List<String> cmd = new ArrayList<>(Platform.wrapForShell());
+        cmd.add(script);
+        PrintStream sink = new PrintStream(OutputStream.nullOutputStream());
+
+        try {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+                p.getInputStream().transferTo(OutputStream.nullOutputStream());
+                p.waitFor();
+            }
+            long spawnNanos = System.nanoTime() - t0;
+
+            ShellPool pool = ShellPool.get();
+            t0 = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                pool.run(script, sink, 0);
+            }
+            long poolNanos = System.nanoTime() - t0;
+
+            return String.format("bash -lc: %.3f ms/cmd%npool(%d): %.3f ms/cmd%nspeedup: x%.1f",
+                    spawnNanos / 1e6 / iterations,
+                    pool.getSize(),
+                    poolNanos / 1e6 / iterations,
+                    (double) spawnNanos / Math.max(1, poolNanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERROR: Interrupted";
+        } catch (IOException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
+
+    public static String runBackgroundCommand(List<String> cmd, String commandExecuted) {
+        return runBackgroundCommand(cmd, commandExecuted, 0);
+    }
+
+    /**
+     * Lanza el comando en background. Si timeoutMs es positivo se registra un
+     * plazo en la {@link TimerWheel}; al vencer se termina todo el árbol de procesos.
+     */
+    public static String runBackgroundCommand(List<String> cmd, String commandExecuted, long timeoutMs) {
+        if (cmd == null || cmd.isEmpty()) return "Error: No se ha introducido ningún comando para ejecutar";
+
+        try {
+            Process process = startBackground(cmd, commandExecuted, timeoutMs);
+            lastExitCode.set(0);
+            String pathToLogs = LogStore.describe(process.pid());
+            if (timeoutMs > 0) {
+                return "BG PID=" + process.pid() + " " + pathToLogs + " TIMEOUT=" + timeoutMs + "ms";
+            }
             return "BG PID=" + process.pid() + " " + pathToLogs;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Arranca y registra el proceso en background. Lo usa también el
+     * {@link JobScheduler} al sacar jobs de la cola.
+     */
+    static Process startBackground(List<String> cmd, String commandExecuted, long timeoutMs) throws IOException {
+        return startBackground(cmd, commandExecuted, timeoutMs, ResourceLimits.NONE);
+    }
+
+    static Process startBackground(List<String> cmd, String commandExecuted, long timeoutMs,
+                                   ResourceLimits limits) throws IOException {
+        ResourceLimiter.Applied applied = ResourceLimiter.prepare(limits);
+        ProcessBuilder pb = initProcessBuilder(applied == null ? cmd : applied.wrap(cmd));
+        // el job escribe directamente en sus ficheros de log: no depende de que el intérprete siga vivo
+        LogStore.Pending logs;
+        Process process;
+        try {
+            logs = LogStore.prepare();
+        } catch (IOException e) {
+            ResourceLimiter.release(applied);
+            throw e;
+        }
+        logs.redirect(pb);
+        try {
+            process = spawn(pb);
+        } catch (IOException e) {
+            ResourceLimiter.release(applied);
+            logs.discard();
+            throw e;
+        }
+        logs.attach(process);
+        Job job = ProcessRegistry.addJob(process, commandExecuted, applied);
+
+        if (timeoutMs > 0) {
+            TimerWheel.Timeout deadline = TimerWheel.schedule(timeoutMs, () -> {
+                job.setCausaFin(JobState.TIMED_OUT);
+                terminateTree(process.toHandle());
+            });
+            process.onExit().thenRun(deadline::cancel);
+        }
+        return process;
+    }
+
+    /**
+     * Termina el proceso y todos sus descendientes: primero destroy() y, si tras
+     * el periodo de gracia alguno sigue vivo, destroyForcibly().
+     */
+    public static void terminateTree(ProcessHandle root) {
+        // se toma la lista antes de matar al padre: los huérfanos dejan de ser descendientes
+        List<ProcessHandle> tree = new ArrayList<>(root.descendants().toList());
+        tree.add(root);
+        traceKill(root.pid(), "timeout", false, () -> tree.forEach(ProcessHandle::destroy));
+
+        TimerWheel.schedule(KILL_GRACE_MS, () -> tree.forEach(ph -> {
+            if (ph.isAlive()) traceKill(ph.pid(), "timeout", true, ph::destroyForcibly);
+        }));
+    }
+
     public static String runKillCommand(long pid) {
-        // Comprobar coincidencia temporal para mitigar reutilización de PID
-        ProcessHandle.of(pid).ifPresentOrElse(ph -> {
-            Optional<Instant> startInstant = ph.info().startInstant();
-            if (startInstant.isPresent()) {
-                // Si coincide, proceder a destruir
-                boolean destroyed = ph.destroy();
-                if (!destroyed) {
-                    // Intentar forzar si no se pudo con destroy()
-                    ph.destroyForcibly();
-                }
-            }
-        }, () -> {
+        Optional<ProcessHandle> handle = ProcessHandle.of(pid);
+        if (handle.isEmpty()) {
             // El proceso no existe en el sistema: limpiamos el registro y señalamos error
             ProcessRegistry.removeJob(pid);
-        });
+            return "Error: El proceso con PID " + pid + " ya no existe";
+        }
+
+        // Comprobar coincidencia temporal para no matar a otro proceso que reutilice el PID
+        ProcessHandle ph = handle.get();
+        Optional<Job> job = ProcessRegistry.getJob(pid);
+        if (job.isPresent() && (!job.get().isAlive() || !job.get().matches(ph))) {
+            return "Error: El proceso con PID " + pid + " ya terminó; el PID pertenece ahora a otro proceso";
+        }
 
-        // Si llegamos aquí, la operación fue iniciada
+        job.ifPresent(j -> j.setCausaFin(JobState.KILLED));
+        boolean[] destroyed = new boolean[1];
+        traceKill(pid, "kill", false, () -> destroyed[0] = ph.destroy());
+        if (!destroyed[0]) {
+            // Intentar forzar si no se pudo con destroy()
+            traceKill(pid, "kill", true, ph::destroyForcibly);
+        }
         return "El proceso con PID " + pid + " ha sido destruido exitosamente";
     }
 
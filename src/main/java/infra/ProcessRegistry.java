@@ -1,73 +1,229 @@
 package infra;
 
 import domain.Job;
+import domain.JobState;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ProcessRegistry {
-    public static ArrayList<Job> processes = new ArrayList<>();
+    // Tabla de jobs indexada por PID: búsqueda y borrado en O(1) y segura entre hilos
+    private static final ConcurrentHashMap<Long, Job> processes = new ConcurrentHashMap<>();
 
     public static void addJob(Job j) {
-        processes.add(j);
-        ActivityLogger.logInfoInHistory(j);
+        processes.put(j.getPID(), j);
+        JobJournal.recordAdd(j);
+        JobEvents.publish(j);
+    }
+
+    /**
+     * Registra el job y engancha su finalización a Process.onExit(), de forma que
+     * el código de salida y la hora de fin se guardan una sola vez sin consultar al SO.
+     */
+    public static Job addJob(Process p, String cmd) {
+        return addJob(p, cmd, null);
+    }
+
+    /**
+     * Igual que {@link #addJob(Process, String)} para un job lanzado con
+     * límites de recursos. Si termina por exceder uno, queda en estado
+     * {@link JobState#LIMIT_EXCEEDED} y se avisa en la sesión que lo lanzó.
+     */
+    public static Job addJob(Process p, String cmd, ResourceLimiter.Applied limits) {
+        Job j = new Job(p.pid(), LocalDateTime.now(), cmd, p.info().startInstant().orElse(null));
+        if (limits != null) j.setLimits(limits.limits());
+        Session session = Session.current();
+        addJob(j);
+        p.onExit().thenAccept(ph -> {
+            int exit = ph.exitValue();
+            JobState state = j.getCausaFin();
+            // un kill o un timeout del intérprete no cuentan como límite excedido
+            Optional<String> exceeded = state == JobState.EXITED
+                    ? ResourceLimiter.exceeded(limits, exit) : Optional.empty();
+            ResourceLimiter.release(limits);
+            if (exceeded.isPresent()) {
+                j.setLimiteExcedido(exceeded.get());
+                state = JobState.LIMIT_EXCEEDED;
+            }
+            if (j.finish(state, exit)) {
+                JobJournal.recordExit(j);
+                JobEvents.publish(j);
+                if (exceeded.isPresent()) reportLimitExceeded(j, session);
+            }
+        });
+        return j;
+    }
+
+    private static void reportLimitExceeded(Job j, Session session) {
+        session.err().println("[" + j.getPID() + "] Límite de " + j.getLimiteExcedido() + " excedido ("
+                + j.getLimits() + "), Exit=" + j.getExitCode() + ": " + j.getCmd());
+    }
+
+    /**
+     * Vuelve a registrar un job recuperado del diario. El proceso ya no es hijo
+     * de este intérprete, así que su código de salida no se puede conocer.
+     */
+    public static void restoreJob(Job j, ProcessHandle ph) {
+        processes.put(j.getPID(), j);
+        if (!j.getEstado().isFinal()) LogStore.resume(j.getPID(), ph);
+        ph.onExit().thenAccept(h -> {
+            if (j.finish(j.getCausaFin(), -1)) {
+                JobJournal.recordExit(j);
+                JobEvents.publish(j);
+            }
+        });
     }
 
     public static boolean removeJob(long pid) {
-        return processes.removeIf(j -> j.getPID() == pid);
+        Job j = processes.remove(pid);
+        if (j != null) JobJournal.recordRemove(j);
+        return j != null;
     }
 
     public static boolean findById(long pid){
-        return processes.stream().anyMatch(j -> j.getPID() == pid);
+        return processes.containsKey(pid);
+    }
+
+    public static Optional<Job> getJob(long pid) {
+        return Optional.ofNullable(processes.get(pid));
+    }
+
+    public static Collection<Job> getJobs() {
+        return processes.values();
+    }
+
+    public static int size() {
+        return processes.size();
     }
 
     public static String execJobs() {
         StringBuilder result = new StringBuilder();
 
-        String header = String.format("%-20s%-20s%-20s%-20s\n", "PID", "COMANDO", "HORA LANZAMIENTO", "ESTADO");
+        String header = String.format("%-20s%-20s%-20s%-20s%-10s%s\n", "PID", "COMANDO", "HORA LANZAMIENTO", "ESTADO", "SALIDA", "LÍMITES");
 
         result.append(header);
 
-        for (Job j : processes) {
+        List<Job> ordered = processes.values().stream()
+                .sorted(Comparator.comparing(Job::getInicio))
+                .toList();
+
+        for (Job j : ordered) {
             result.append(j.toString())
                     .append('\n');
         }
+        result.append(JobScheduler.renderQueued());
         return result.toString();
     }
 
+    /**
+     * Vista ampliada de la tabla de jobs con CPU, memoria, hilos y número de
+     * descendientes, sacada de una sola foto de /proc.
+     */
+    public static String execJobsLong() {
+        ProcSnapshot snap = ProcSnapshot.get();
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%-10s%-10s%-8s%-12s%-10s%-7s%-7s%-20s%s%n",
+                "PID", "PPID", "ESTADO", "CPU", "RSS(MB)", "HILOS", "DESC", "HORA LANZAMIENTO", "COMANDO"));
+
+        List<Job> ordered = processes.values().stream()
+                .sorted(Comparator.comparing(Job::getInicio))
+                .toList();
+
+        for (Job j : ordered) {
+            Optional<ProcSnapshot.ProcInfo> info = j.isAlive() ? snap.get(j.getPID()) : Optional.empty();
+            if (info.isPresent()) {
+                // CPU y memoria del árbol completo, como en stats
+                ProcSnapshot.ProcInfo p = info.get();
+                List<Long> desc = snap.descendants(p.pid());
+                Duration cpu = p.cpu();
+                long rssKb = Math.max(0, p.rssKb());
+                for (long d : desc) {
+                    Optional<ProcSnapshot.ProcInfo> child = snap.get(d);
+                    if (child.isEmpty()) continue;
+                    if (cpu != null && child.get().cpu() != null) cpu = cpu.plus(child.get().cpu());
+                    rssKb += Math.max(0, child.get().rssKb());
+                }
+                result.append(String.format("%-10d%-10d%-8s%-12s%-10.1f%-7d%-7d%-20s%s%n",
+                        p.pid(), p.ppid(), j.getEstado().getLabel(),
+                        cpu == null ? "-" : formatCpu(cpu),
+                        rssKb / 1024.0,
+                        p.threads(), desc.size(),
+                        j.getHoraInicio(), j.getCmd()));
+            } else {
+                result.append(String.format("%-10d%-10s%-8s%-12s%-10s%-7s%-7s%-20s%s%n",
+                        j.getPID(), "-", j.getEstado().getLabel(), "-", "-", "-", "-",
+                        j.getHoraInicio(), j.getCmd()));
+            }
+        }
+        for (JobScheduler.Pending q : JobScheduler.queued()) {
+            result.append(String.format("%-10s%-10s%-8s%-12s%-10s%-7s%-7s%-20s%s%n",
+                    "Q" + q.id(), "-", JobState.QUEUED.getLabel(), "-", "-", "-", "-",
+                    q.getHoraEncolado(), q.cmd()));
+        }
+        result.append(String.format("foto de /proc: %d procesos, %d µs, hace %d ms",
+                snap.size(), snap.getScanMicros(), snap.ageMs()));
+        return result.toString();
+    }
+
+    private static String formatCpu(Duration cpu) {
+        return String.format("%d:%02d.%02d", cpu.toMinutes(), cpu.toSecondsPart(), cpu.toMillisPart() / 10);
+    }
+
     public static Optional<String> describeProcess(long pid) {
-        return ProcessHandle.of(pid).map(ph -> {
-            ProcessHandle.Info info = ph.info();
-
-            String command = info.command().orElse("<unknown>");
-            String[] args = info.arguments().orElse(new String[0]);
-            String cmdline = args.length == 0 ? command : command + " " + String.join(" ", args);
-            String user = info.user().orElse("<unknown>");
-            String start = info.startInstant()
-                    .map(i -> LocalDateTime.ofInstant(i, ZoneId.systemDefault())
-                            .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
-                    .orElse("<unknown>");
-            String cpu = info.totalCpuDuration()
-                    .map(Duration::toString)
-                    .orElse("<unknown>");
-            long pidVal = ph.pid();
-            boolean alive = ph.isAlive();
-            Optional<ProcessHandle> parent = ph.parent();
-            List<Long> children = ph.children().map(ProcessHandle::pid).toList();
-
-            return "PID: " + pidVal + "\n" +
-                    "Alive: " + alive + "\n" +
-                    "User: " + user + "\n" +
-                    "Command: " + cmdline + "\n" +
+        return describeProcess(ProcSnapshot.get(), pid);
+    }
+
+    /**
+     * Describe varios procesos a partir de la misma foto de /proc.
+     */
+    public static String describeProcesses(List<Long> pids) {
+        ProcSnapshot snap = ProcSnapshot.get();
+        StringBuilder sb = new StringBuilder();
+        for (long pid : pids) {
+            if (!sb.isEmpty()) sb.append('\n');
+            sb.append(describeProcess(snap, pid).orElseGet(() -> describeFinishedJob(pid)));
+        }
+        return sb.toString();
+    }
+
+    private static Optional<String> describeProcess(ProcSnapshot snap, long pid) {
+        return snap.get(pid).map(p -> {
+            String start = p.start() == null ? "<unknown>"
+                    : LocalDateTime.ofInstant(p.start(), ZoneId.systemDefault())
+                            .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            List<Long> children = snap.children(pid);
+            String user = snap.user(pid);
+
+            return "PID: " + p.pid() + "\n" +
+                    "Alive: " + (p.state() != 'Z') + "\n" +
+                    "State: " + p.state() + "\n" +
+                    "User: " + (user == null ? "<unknown>" : user) + "\n" +
+                    "Command: " + p.command() + "\n" +
                     "Start: " + start + "\n" +
-                    "CPU total: " + cpu + "\n" +
-                    "Parent PID: " + parent.map(ProcessHandle::pid).map(String::valueOf).orElse("<none>") + "\n" +
-                    "Children PIDs: " + (children.isEmpty() ? "<none>" : children.toString()) + "\n";
+                    "CPU total: " + (p.cpu() == null ? "<unknown>" : p.cpu().toString()) + "\n" +
+                    "Threads: " + (p.threads() < 0 ? "<unknown>" : p.threads()) + "\n" +
+                    "RSS: " + (p.rssKb() < 0 ? "<unknown>" : p.rssKb() + " kB") + "\n" +
+                    "Parent PID: " + (p.ppid() > 0 ? String.valueOf(p.ppid()) : "<none>") + "\n" +
+                    "Children PIDs: " + (children.isEmpty() ? "<none>" : children.toString()) + "\n" +
+                    getJob(pid).map(j -> "Limits: " + j.getLimitsLabel() + "\n").orElse("");
         });
     }
+
+    // El proceso ya no está en /proc, pero el job sigue en la tabla
+    private static String describeFinishedJob(long pid) {
+        return getJob(pid).map(j -> "PID: " + pid + "\n" +
+                        "Alive: false\n" +
+                        "State: " + j.getEstado().getLabel() + "\n" +
+                        "Exit code: " + j.getExitCode() + "\n" +
+                        "Command: " + j.getCmd() + "\n" +
+                        "Limits: " + j.getLimitsLabel() + "\n")
+                .orElseGet(() -> "No existe proceso con PID " + pid + ".\n");
+    }
 }
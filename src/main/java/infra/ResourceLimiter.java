@@ -0,0 +1,208 @@
+package infra;
+
+import domain.ResourceLimits;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aplica {@link ResourceLimits} a un comando de shell. Los límites van como
+ * {@code ulimit} al principio del propio script (la shell ya se lanza, así que
+ * no cuesta un proceso más como prlimit). Si se indica con
+ * {@code -Dlimits.cgroup=<dir>} un cgroup v2 delegado, la memoria y el número
+ * de procesos se limitan con un cgroup por job dentro de él, en el que la
+ * shell entra antes de ejecutar el comando. No se detecta solo: por la regla
+ * de "sin procesos internos" de cgroup v2 no se pueden habilitar controladores
+ * para hijos en el cgroup donde vive el propio intérprete.
+ */
+public class ResourceLimiter {
+    // Un proceso que supera el límite blando de CPU recibe SIGXCPU (128 + 24)
+    public static final int EXIT_SIGXCPU = 152;
+    // Al llegar al límite duro, SIGKILL (128 + 9); también lo usan kill -9 y el OOM killer
+    public static final int EXIT_SIGKILL = 137;
+    private static final long MICROS = 1_000_000L;
+
+    private static final AtomicLong nextId = new AtomicLong();
+    private static volatile Optional<Path> cgroupBase;
+
+    /**
+     * Límites preparados para un job: el prefijo de shell y, si se usa, su cgroup.
+     */
+    public record Applied(ResourceLimits limits, Path cgroup, String prefix) {
+
+        /**
+         * Antepone el prefijo al script, que es el último elemento del comando.
+         */
+        public List<String> wrap(List<String> cmd) {
+            if (prefix.isEmpty()) return cmd;
+            List<String> wrapped = new ArrayList<>(cmd);
+            wrapped.set(wrapped.size() - 1, prefix + wrapped.getLast());
+            return wrapped;
+        }
+
+        public String describe() {
+            return cgroup == null ? limits.toString() : limits + " (cgroup " + cgroup.getFileName() + ")";
+        }
+    }
+
+    /**
+     * Prepara los límites; null si no hay ninguno.
+     */
+    public static Applied prepare(ResourceLimits limits) throws IOException {
+        if (limits == null || limits.isEmpty()) return null;
+        if (Platform.isWindows()) {
+            throw new IOException("Los límites de recursos solo están disponibles en Linux");
+        }
+
+        Path cgroup = null;
+        Optional<Path> base = cgroupBase();
+        // con límite de CPU el cgroup solo sirve para saber cuánta CPU usó el job
+        if (base.isPresent()
+                && (limits.memoryBytes() != null || limits.processes() != null || limits.cpuSeconds() != null)) {
+            cgroup = createCgroup(base.get(), limits);
+        }
+
+        StringBuilder ulimit = new StringBuilder();
+        // con cgroup la memoria se limita por RSS; -v (espacio de direcciones) es el último recurso
+        if (limits.memoryBytes() != null && cgroup == null) {
+            ulimit.append(" -v ").append(Math.max(1, limits.memoryBytes() / 1024));
+        }
+        if (limits.openFiles() != null) ulimit.append(" -n ").append(limits.openFiles());
+        if (limits.processes() != null && cgroup == null) ulimit.append(" -u ").append(limits.processes());
+
+        StringBuilder prefix = new StringBuilder();
+        if (cgroup != null) {
+            prefix.append("echo $$ > ").append(quote(cgroup.resolve("cgroup.procs").toString())).append(" || exit 1; ");
+        }
+        if (limits.cpuSeconds() != null) {
+            // blando en N y duro en N+1: al pasarse llega SIGXCPU y no un SIGKILL indistinguible
+            // el blando primero: el duro no puede quedar por debajo del blando actual
+            prefix.append("ulimit -S -t ").append(limits.cpuSeconds())
+                    .append(" && ulimit -H -t ").append(limits.cpuSeconds() + 1).append(" || exit 1; ");
+        }
+        if (!ulimit.isEmpty()) prefix.append("ulimit").append(ulimit).append(" || exit 1; ");
+        return new Applied(limits, cgroup, prefix.toString());
+    }
+
+    /**
+     * Motivo por el que el job terminó al exceder un límite, según su código
+     * de salida y los contadores de su cgroup. Con ulimit -v o -n el programa
+     * solo ve fallar la reserva o la apertura, así que no se puede atribuir.
+     * Un SIGKILL solo se cuenta como CPU si el cgroup confirma que el job
+     * consumió al menos el límite; sin cgroup no se puede saber y no se cuenta.
+     */
+    public static Optional<String> exceeded(Applied applied, int exitCode) {
+        if (applied == null) return Optional.empty();
+        ResourceLimits limits = applied.limits();
+        if (applied.cgroup() != null) {
+            if (limits.memoryBytes() != null && eventCount(applied.cgroup(), "memory.events", "oom_kill") > 0) {
+                return Optional.of("memoria");
+            }
+            if (exitCode != 0 && limits.processes() != null && eventCount(applied.cgroup(), "pids.events", "max") > 0) {
+                return Optional.of("procesos");
+            }
+        }
+        if (limits.cpuSeconds() != null) {
+            if (exitCode == EXIT_SIGXCPU) return Optional.of("cpu");
+            if (exitCode == EXIT_SIGKILL && applied.cgroup() != null
+                    && eventCount(applied.cgroup(), "cpu.stat", "usage_usec") >= limits.cpuSeconds() * MICROS) {
+                return Optional.of("cpu");
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Borra el cgroup del job. Si queda algún descendiente dentro no se puede
+     * borrar y se deja.
+     */
+    public static void release(Applied applied) {
+        if (applied == null || applied.cgroup() == null) return;
+        try {
+            Files.deleteIfExists(applied.cgroup());
+        } catch (IOException ignored) {}
+    }
+
+    public static String status() {
+        if (System.getProperty("limits.cgroup") == null) {
+            return "cgroup v2: no configurado, solo ulimit (usa -Dlimits.cgroup=<dir>)";
+        }
+        return cgroupBase().map(p -> "cgroup v2: " + p).orElse("cgroup v2: no disponible (solo ulimit)");
+    }
+
+    private static Optional<Path> cgroupBase() {
+        Optional<Path> base = cgroupBase;
+        if (base == null) {
+            synchronized (ResourceLimiter.class) {
+                if (cgroupBase == null) cgroupBase = detectCgroup();
+                base = cgroupBase;
+            }
+        }
+        return base;
+    }
+
+    /**
+     * Usa como base el cgroup de {@code -Dlimits.cgroup}, que debe ser un
+     * subárbol v2 delegado al usuario y sin procesos propios (p. ej. uno
+     * creado con {@code systemd-run --user --scope} o por el administrador).
+     * Se le habilitan memory y pids para los hijos y cada job crea el suyo
+     * directamente debajo. Si alguna escritura falla se usa solo ulimit.
+     */
+    private static Optional<Path> detectCgroup() {
+        String configured = System.getProperty("limits.cgroup");
+        if (configured == null || "off".equals(configured) || Platform.isWindows()) return Optional.empty();
+        try {
+            Path base = Path.of(configured);
+            if (!Files.isWritable(base)) return Optional.empty();
+            if (!Files.readString(base.resolve("cgroup.procs")).isBlank()) return Optional.empty();
+
+            List<String> controllers = List.of(Files.readString(base.resolve("cgroup.controllers")).trim().split("\\s+"));
+            StringBuilder enable = new StringBuilder();
+            if (controllers.contains("memory")) enable.append("+memory ");
+            if (controllers.contains("pids")) enable.append("+pids ");
+            if (enable.isEmpty()) return Optional.empty();
+            Files.writeString(base.resolve("cgroup.subtree_control"), enable.toString().trim());
+            return Optional.of(base);
+        } catch (IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static Path createCgroup(Path base, ResourceLimits limits) throws IOException {
+        Path dir = base.resolve(ProcessHandle.current().pid() + "-" + nextId.incrementAndGet());
+        Files.createDirectory(dir);
+        try {
+            if (limits.memoryBytes() != null) {
+                Files.writeString(dir.resolve("memory.max"), Long.toString(limits.memoryBytes()));
+                // sin esto el job pasaría a swap en lugar de morir al llegar al límite
+                Path swap = dir.resolve("memory.swap.max");
+                if (Files.exists(swap)) Files.writeString(swap, "0");
+            }
+            if (limits.processes() != null) {
+                Files.writeString(dir.resolve("pids.max"), Long.toString(limits.processes()));
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(dir);
+            throw new IOException("No se pudo configurar el cgroup " + dir + ": " + e.getMessage(), e);
+        }
+        return dir;
+    }
+
+    private static long eventCount(Path cgroup, String file, String key) {
+        try {
+            for (String line : Files.readAllLines(cgroup.resolve(file))) {
+                if (line.startsWith(key + " ")) return Long.parseLong(line.substring(key.length() + 1).trim());
+            }
+        } catch (IOException | NumberFormatException ignored) {}
+        return 0;
+    }
+
+    private static String quote(String s) {
+        return "'" + s.replace("'", "'\\''") + "'";
+    }
+}
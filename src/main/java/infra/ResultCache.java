@@ -0,0 +1,269 @@
+package infra;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Caché en disco de resultados de {@code ejecuta --cache}. La clave es un
+ * SHA-256 del comando, el directorio y el entorno de la sesión y el contenido
+ * y la fecha de modificación del fichero IN. Cada entrada guarda la salida,
+ * los errores y el código de salida en {@code cache/<clave>/}. Cuando el
+ * tamaño total supera {@code cache.max.bytes} se borran las entradas usadas
+ * hace más tiempo.
+ */
+public class ResultCache {
+    private static final File cacheDir = new File("cache");
+    private static final long MAX_BYTES = Long.getLong("cache.max.bytes", 64L * 1024 * 1024);
+    private static final String OUT = "out";
+    private static final String ERR = "err";
+    private static final String META = "meta";
+
+    // Orden de acceso: la primera entrada es la candidata a desalojar
+    private static final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+    // Hash del fichero IN por ruta, válido mientras no cambien tamaño y fecha
+    private static final Map<Path, InputHash> inputHashes = new ConcurrentHashMap<>();
+    private static long totalBytes;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+
+    private record Entry(String key, String command, int exitCode, long bytes) { }
+
+    private record InputHash(long size, long mtime, String sha) { }
+
+    static {
+        loadIndex();
+    }
+
+    /**
+     * Devuelve el resultado guardado o ejecuta el comando con {@code exec},
+     * que recibe las rutas donde debe dejar stdout y stderr. En ambos casos la
+     * salida se reproduce en los ficheros OUT/ERR o en la sesión.
+     */
+    public static String run(String command, String fileIn, String fileOut, String fileErr,
+                             BiFunction<String, String, String> exec) {
+        String key;
+        try {
+            key = key(command, fileIn);
+        } catch (IOException e) {
+            return "Error: No se pudo leer el fichero de entrada: " + e.getMessage();
+        }
+
+        Entry hit;
+        synchronized (ResultCache.class) {
+            hit = index.get(key);
+        }
+        if (hit != null) {
+            hits.incrementAndGet();
+            File dir = new File(cacheDir, key);
+            dir.setLastModified(System.currentTimeMillis());
+            try {
+                replay(dir, fileOut, fileErr);
+            } catch (IOException e) {
+                return "Error: No se pudo reproducir la entrada de caché: " + e.getMessage();
+            }
+            ProcessManager.setLastExitCode(hit.exitCode());
+            return "OK: Exit=" + hit.exitCode() + " (caché)";
+        }
+
+        misses.incrementAndGet();
+        File tmp = new File(cacheDir, key + ".tmp-" + UUID.randomUUID());
+        tmp.mkdirs();
+        String result = exec.apply(new File(tmp, OUT).getAbsolutePath(), new File(tmp, ERR).getAbsolutePath());
+        Integer exit = ProcessManager.getLastExitCode();
+
+        try {
+            replay(tmp, fileOut, fileErr);
+            // timeouts y errores de lanzamiento no son resultados reproducibles
+            if (exit != null && exit != ProcessManager.EXIT_TIMEOUT && exit != ProcessManager.EXIT_ERROR) {
+                store(key, command, exit, tmp);
+            }
+        } catch (IOException e) {
+            result += " (no se pudo guardar en caché: " + e.getMessage() + ")";
+        } finally {
+            deleteDir(tmp);
+        }
+        return result;
+    }
+
+    private static String key(String command, String fileIn) throws IOException {
+        Session session = Session.current();
+        StringBuilder sb = new StringBuilder("v1\0").append(command)
+                .append('\0').append(session.getDirectory())
+                .append('\0').append(session.getEnv().toShell());
+        if (fileIn != null) {
+            Path in = session.resolve(fileIn).toPath().toAbsolutePath();
+            long size = Files.size(in);
+            long mtime = Files.getLastModifiedTime(in).toMillis();
+            InputHash h = inputHashes.get(in);
+            if (h == null || h.size() != size || h.mtime() != mtime) {
+                h = new InputHash(size, mtime, sha256(in));
+                inputHashes.put(in, h);
+            }
+            sb.append('\0').append(in).append('\0').append(mtime).append('\0').append(h.sha());
+        }
+        return hex(digest().digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest md = digest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) md.update(buffer, 0, n);
+        }
+        return hex(md.digest());
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    // Copia out/err de la entrada a los ficheros OUT/ERR o a la sesión
+    private static void replay(File dir, String fileOut, String fileErr) throws IOException {
+        Session session = Session.current();
+        replay(new File(dir, OUT), fileOut, OutputCapture.tee(session.out()));
+        replay(new File(dir, ERR), fileErr, OutputCapture.tee(session.err()));
+    }
+
+    private static void replay(File source, String target, OutputStream console) throws IOException {
+        if (!source.exists()) return;
+        if (target != null) {
+            Files.copy(source.toPath(), Session.current().resolve(target).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.copy(source.toPath(), console);
+            console.flush();
+        }
+    }
+
+    private static void store(String key, String command, int exit, File tmp) throws IOException {
+        File dir = new File(cacheDir, key);
+        File staged = new File(cacheDir, key + ".new-" + UUID.randomUUID());
+        staged.mkdirs();
+        long bytes = 0;
+        for (String name : List.of(OUT, ERR)) {
+            File f = new File(tmp, name);
+            if (!f.exists()) continue;
+            Files.copy(f.toPath(), new File(staged, name).toPath());
+            bytes += f.length();
+        }
+        Files.writeString(new File(staged, META).toPath(), exit + "\n" + command, StandardCharsets.UTF_8);
+
+        synchronized (ResultCache.class) {
+            if (index.containsKey(key) || bytes > MAX_BYTES) {
+                deleteDir(staged);
+                return;
+            }
+            Files.move(staged.toPath(), dir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            index.put(key, new Entry(key, command, exit, bytes));
+            totalBytes += bytes;
+            evict();
+        }
+    }
+
+    private static void evict() {
+        var it = index.values().iterator();
+        while (totalBytes > MAX_BYTES && it.hasNext()) {
+            Entry e = it.next();
+            it.remove();
+            totalBytes -= e.bytes();
+            deleteDir(new File(cacheDir, e.key()));
+            evictions.incrementAndGet();
+        }
+    }
+
+    // Reconstruye el índice del disco, de la entrada menos a la más usada
+    private static void loadIndex() {
+        cacheDir.mkdirs();
+        File[] dirs = cacheDir.listFiles(File::isDirectory);
+        if (dirs == null) return;
+        Arrays.sort(dirs, Comparator.comparingLong(File::lastModified));
+        for (File dir : dirs) {
+            String name = dir.getName();
+            if (name.contains(".")) {
+                // restos de una ejecución interrumpida
+                deleteDir(dir);
+                continue;
+            }
+            try {
+                String[] meta = Files.readString(new File(dir, META).toPath(), StandardCharsets.UTF_8).split("\n", 2);
+                long bytes = new File(dir, OUT).length() + new File(dir, ERR).length();
+                index.put(name, new Entry(name, meta.length > 1 ? meta[1] : "", Integer.parseInt(meta[0]), bytes));
+                totalBytes += bytes;
+            } catch (IOException | RuntimeException e) {
+                deleteDir(dir);
+            }
+        }
+    }
+
+    /**
+     * Borra las entradas cuyo comando contiene el texto, o todas si es null.
+     */
+    public static synchronized int invalidate(String text) {
+        List<Entry> removed = new ArrayList<>();
+        for (Entry e : index.values()) {
+            if (text == null || e.command().contains(text)) removed.add(e);
+        }
+        for (Entry e : removed) {
+            index.remove(e.key());
+            totalBytes -= e.bytes();
+            deleteDir(new File(cacheDir, e.key()));
+        }
+        inputHashes.clear();
+        return removed.size();
+    }
+
+    public static synchronized String stats() {
+        long h = hits.get(), m = misses.get();
+        return String.format("Entradas: %d  Tamaño: %.1f/%.1f MB  Aciertos: %d  Fallos: %d  Tasa: %.1f%%  Desalojos: %d",
+                index.size(), totalBytes / 1048576.0, MAX_BYTES / 1048576.0, h, m,
+                h + m == 0 ? 0.0 : h * 100.0 / (h + m), evictions.get());
+    }
+
+    public static synchronized String list() {
+        StringBuilder sb = new StringBuilder(String.format("%-14s%-6s%-10s%s%n", "CLAVE", "EXIT", "BYTES", "COMANDO"));
+        List<Entry> entries = new ArrayList<>(index.values());
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry e = entries.get(i);
+            sb.append(String.format("%-14s%-6d%-10d%s%n", e.key().substring(0, 12), e.exitCode(), e.bytes(),
+                    e.command()));
+        }
+        return sb.toString();
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,119 @@
+package infra;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+/**
+ * Sesión de usuario del intérprete: a dónde va la salida de los comandos y
+ * con qué directorio y entorno se lanzan. La sesión de consola usa
+ * System.out/System.err y hereda la E/S del terminal; las sesiones remotas del
+ * modo daemon reciben la salida de los procesos por tubería.
+ */
+public class Session {
+    // antes que CONSOLE: el constructor lo usa como directorio inicial
+    private static final Path JVM_DIRECTORY = Path.of(System.getProperty("user.dir")).toAbsolutePath();
+    private static final Session CONSOLE = new Session("console", System.out, System.err, true);
+    private static final ThreadLocal<Session> current = ThreadLocal.withInitial(() -> CONSOLE);
+
+    private final String id;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final boolean console;
+    // cd y set/export sustituyen la referencia; las fotos nunca se modifican
+    private volatile Path directory = JVM_DIRECTORY;
+    private volatile EnvSnapshot env = EnvSnapshot.base();
+
+    public Session(String id, PrintStream out, PrintStream err, boolean console) {
+        this.id = id;
+        this.out = out;
+        this.err = err;
+        this.console = console;
+    }
+
+    public static Session current() {
+        return current.get();
+    }
+
+    public static void bind(Session s) {
+        current.set(s);
+    }
+
+    public static void unbind() {
+        current.remove();
+    }
+
+    /**
+     * Envuelve la tarea para que se ejecute con la sesión del hilo que la crea.
+     */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        Session s = current();
+        return () -> {
+            bind(s);
+            try {
+                return task.call();
+            } finally {
+                unbind();
+            }
+        };
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public PrintStream out() {
+        return out;
+    }
+
+    public PrintStream err() {
+        return err;
+    }
+
+    public boolean isConsole() {
+        return console;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    public EnvSnapshot getEnv() {
+        return env;
+    }
+
+    public void setEnv(EnvSnapshot env) {
+        this.env = env;
+    }
+
+    /**
+     * Ruta relativa al directorio de la sesión.
+     */
+    public File resolve(String path) {
+        return directory.resolve(path).toFile();
+    }
+
+    /**
+     * Aplica el directorio y el entorno de la sesión al ProcessBuilder.
+     */
+    public void apply(ProcessBuilder pb) {
+        if (!directory.equals(JVM_DIRECTORY)) pb.directory(directory.toFile());
+        env.apply(pb);
+    }
+
+    /**
+     * Prefijo de shell equivalente a {@link #apply(ProcessBuilder)}.
+     */
+    public String toShell() {
+        String prefix = env.toShell();
+        if (!directory.equals(JVM_DIRECTORY)) {
+            prefix = "cd '" + directory.toString().replace("'", "'\\''") + "' || exit 1; " + prefix;
+        }
+        return prefix;
+    }
+}
@@ -0,0 +1,182 @@
+package infra;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * Pool de shells precalentadas (no login) para el modo de lanzamiento rápido.
+ * Cada trabajador recibe el comando por su stdin y marca el final de la salida
+ * con un token propio seguido del código de salida.
+ */
+public class ShellPool {
+    public static final int TIMED_OUT = -1;
+
+    private static final int DEFAULT_SIZE = 4;
+    private static volatile boolean enabled = Boolean.getBoolean("shell.pool");
+    private static volatile ShellPool instance;
+
+    private final int size;
+    private final BlockingQueue<Worker> idle;
+
+    private ShellPool(int size) {
+        this.size = size;
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    public static boolean isEnabled() {
+        return enabled && !Platform.isWindows();
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    public static ShellPool get() {
+        ShellPool p = instance;
+        if (p == null) {
+            synchronized (ShellPool.class) {
+                p = instance;
+                if (p == null) {
+                    p = new ShellPool(Integer.getInteger("shell.pool.size", DEFAULT_SIZE));
+                    p.warmUp();
+                    instance = p;
+                    Runtime.getRuntime().addShutdownHook(new Thread(instance::shutdown, "shell-pool-shutdown"));
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Ejecuta el script en un trabajador libre y copia su salida en target.
+     * Devuelve el código de salida o {@link #TIMED_OUT} si se superó el timeout.
+     */
+    public int run(String script, PrintStream target, long timeoutMs) throws IOException, InterruptedException {
+        Worker w = idle.take();
+        boolean healthy = false;
+        try {
+            if (!w.process.isAlive()) {
+                w = new Worker();
+            }
+            // el script corre en una subshell: el cd y los export no quedan en el trabajador
+            int exit = w.exec(Session.current().toShell() + script, target, timeoutMs);
+            healthy = exit != TIMED_OUT;
+            return exit;
+        } finally {
+            if (healthy) {
+                idle.offer(w);
+            } else {
+                w.kill();
+                idle.offer(new Worker());
+            }
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    public void shutdown() {
+        List<Worker> workers = new ArrayList<>();
+        idle.drainTo(workers);
+        workers.forEach(Worker::kill);
+    }
+
+    private void warmUp() {
+        for (int i = 0; i < size; i++) {
+            try {
+                idle.offer(new Worker());
+            } catch (IOException e) {
+                System.out.println("Error al arrancar shell del pool: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Devuelve el texto del script que ejecutaría {@code bash -lc}: los argumentos
+     * que siguen al prefijo de {@link Platform#wrapForShell()}.
+     */
+    public static String scriptOf(List<String> cmd) {
+        int prefix = Platform.wrapForShell().size();
+        return String.join(" ", cmd.subList(Math.min(prefix, cmd.size()), cmd.size()));
+    }
+
+    /**
+     * Añade las redirecciones de ejecuta al script. Sin fichero de entrada se
+     * usa /dev/null para que el comando no consuma el stdin del trabajador.
+     */
+    public static String withRedirects(String script, String fileIn, String fileOut, String fileErr) {
+        StringBuilder sb = new StringBuilder("{ ").append(script).append("\n}");
+        sb.append(" < ").append(fileIn == null ? "/dev/null" : quote(fileIn));
+        if (fileOut != null) sb.append(" > ").append(quote(fileOut));
+        sb.append(fileErr != null ? " 2> " + quote(fileErr) : " 2>&1");
+        return sb.toString();
+    }
+
+    private static String quote(String s) {
+        return "'" + s.replace("'", "'\\''") + "'";
+    }
+
+    private static class Worker {
+        private final Process process;
+        private final Writer stdin;
+        private final BufferedReader stdout;
+        private final String marker = "__PSPSH_" + UUID.randomUUID().toString().replace("-", "") + "__";
+        private volatile boolean abandoned;
+
+        Worker() throws IOException {
+            ProcessBuilder pb = new ProcessBuilder("bash", "--noprofile", "--norc", "-s");
+            pb.redirectErrorStream(true);
+            process = pb.start();
+            stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        int exec(String script, PrintStream target, long timeoutMs)
+                throws IOException, InterruptedException {
+            // printf sin salto previo: si la salida no acaba en \n el marcador queda a mitad de línea
+            stdin.write("( " + script + "\n) < /dev/null\nprintf '%s %d\\n' '" + marker + "' $?\n");
+            stdin.flush();
+
+            Future<Integer> reader = ExecutionEngine.pump(() -> readUntilMarker(target));
+            try {
+                return timeoutMs > 0 ? reader.get(timeoutMs, TimeUnit.MILLISECONDS) : reader.get();
+            } catch (TimeoutException e) {
+                abandoned = true;
+                reader.cancel(true);
+                return TIMED_OUT;
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+
+        private int readUntilMarker(PrintStream target) throws IOException {
+            String line;
+            while ((line = stdout.readLine()) != null && !abandoned) {
+                int idx = line.indexOf(marker);
+                if (idx < 0) {
+                    target.println(line);
+                    continue;
+                }
+                if (idx > 0) target.print(line.substring(0, idx));
+                String status = line.substring(idx + marker.length()).trim();
+                return Integer.parseInt(status);
+            }
+            if (abandoned) return TIMED_OUT;
+            throw new EOFException("La shell del pool terminó inesperadamente");
+        }
+
+        void kill() {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        }
+    }
+}
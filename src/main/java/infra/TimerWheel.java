@@ -0,0 +1,102 @@
+package infra;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Rueda de temporización (hashed wheel) compartida para los plazos de los jobs.
+ * Un único hilo avanza un tick cada {@link #TICK_MS} ms y solo revisa el cubo
+ * actual, así que mantener miles de plazos pendientes apenas cuesta.
+ */
+public class TimerWheel {
+    public static final long TICK_MS = 10;
+    private static final int WHEEL_SIZE = 512; // potencia de 2
+
+    private static final ConcurrentLinkedQueue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    @SuppressWarnings("unchecked")
+    private static final ArrayDeque<Timeout>[] buckets = new ArrayDeque[WHEEL_SIZE];
+    private static final long startNanos = System.nanoTime();
+    private static long tick;
+
+    static {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        Thread worker = new Thread(TimerWheel::loop, "timer-wheel");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public static class Timeout {
+        private final long deadlineTick;
+        private final Runnable task;
+        private volatile boolean cancelled;
+
+        private Timeout(long deadlineTick, Runnable task) {
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Programa la tarea para dentro de delayMs. La tarea se ejecuta en el
+     * {@link ExecutionEngine}, nunca en el hilo de la rueda.
+     */
+    public static Timeout schedule(long delayMs, Runnable task) {
+        long elapsedTicks = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) / TICK_MS;
+        long ticks = Math.max(1, (delayMs + TICK_MS - 1) / TICK_MS);
+        Timeout t = new Timeout(elapsedTicks + ticks, task);
+        incoming.offer(t);
+        return t;
+    }
+
+    private static void loop() {
+        while (true) {
+            long nextTickNanos = startNanos + TimeUnit.MILLISECONDS.toNanos((tick + 1) * TICK_MS);
+            long wait = nextTickNanos - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+
+            tick++;
+            transferIncoming();
+            expire(buckets[(int) (tick & (WHEEL_SIZE - 1))]);
+        }
+    }
+
+    private static void transferIncoming() {
+        Timeout t;
+        while ((t = incoming.poll()) != null) {
+            if (t.cancelled) continue;
+            // los plazos ya vencidos van al cubo actual
+            long target = Math.max(t.deadlineTick, tick);
+            buckets[(int) (target & (WHEEL_SIZE - 1))].add(t);
+        }
+    }
+
+    private static void expire(ArrayDeque<Timeout> bucket) {
+        Iterator<Timeout> it = bucket.iterator();
+        while (it.hasNext()) {
+            Timeout t = it.next();
+            if (t.cancelled) {
+                it.remove();
+            } else if (t.deadlineTick <= tick) {
+                it.remove();
+                ExecutionEngine.submit(t.task);
+            }
+            // el resto pertenece a vueltas posteriores de la rueda
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package infra;
+
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Control de la grabación JFR de {@code trace on|off|dump}. Además de emitir
+ * los eventos de {@link TraceEvents}, mientras está activa guarda la duración
+ * de cada fase para poder resumirla con p50/p99 sin abrir el fichero JFR.
+ */
+public class Trace {
+    private static final int MAX_SAMPLES = 65536;
+
+    public enum Phase {
+        COMMAND("comando"),
+        PARSE("parse"),
+        SPAWN("spawn"),
+        FIRST_BYTE("primer byte"),
+        WAIT("espera"),
+        KILL("kill"),
+        HISTORY("historial");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    // Duraciones en ns; al llenarse se sobrescriben las más antiguas
+    private static class Samples {
+        private final long[] values = new long[MAX_SAMPLES];
+        private long count;
+
+        synchronized void add(long nanos) {
+            values[(int) (count++ % MAX_SAMPLES)] = nanos;
+        }
+
+        synchronized void clear() {
+            count = 0;
+        }
+
+        synchronized long[] sorted() {
+            long[] copy = Arrays.copyOf(values, (int) Math.min(count, MAX_SAMPLES));
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+
+    private static final Map<Phase, Samples> samples = new EnumMap<>(Phase.class);
+    private static volatile boolean on;
+    private static Recording recording;
+
+    static {
+        for (Phase p : Phase.values()) samples.put(p, new Samples());
+    }
+
+    /**
+     * Tramo medido de una fase. {@link #end()} emite el evento una sola vez,
+     * aunque lo llamen varios hilos (p. ej. los gobblers de stdout y stderr).
+     */
+    public static final class Span {
+        private final TraceEvents.PspshEvent event;
+        private final Phase phase;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        private Span(Phase phase, TraceEvents.PspshEvent event) {
+            this.phase = phase;
+            this.event = event;
+            event.begin();
+        }
+
+        public Span pid(long pid) {
+            event.pid = pid;
+            return this;
+        }
+
+        public Span command(String command) {
+            event.command = command;
+            return this;
+        }
+
+        public void end() {
+            if (!ended.compareAndSet(false, true)) return;
+            event.end();
+            if (event.shouldCommit()) event.commit();
+            if (on) samples.get(phase).add(System.nanoTime() - start);
+        }
+    }
+
+    public static Span span(Phase phase, TraceEvents.PspshEvent event) {
+        return new Span(phase, event);
+    }
+
+    public static boolean isOn() {
+        return on;
+    }
+
+    public static synchronized String start() {
+        if (on) return "La traza ya está activa";
+        if (recording != null) recording.close();
+        recording = new Recording();
+        recording.setName("pspsh");
+        for (Class<?> c : TraceEvents.class.getClasses()) {
+            if (Event.class.isAssignableFrom(c) && !Modifier.isAbstract(c.getModifiers())) {
+                recording.enable(c.asSubclass(Event.class)).withoutThreshold();
+            }
+        }
+        recording.start();
+        samples.values().forEach(Samples::clear);
+        on = true;
+        return "Traza activada";
+    }
+
+    public static synchronized String stop() {
+        if (!on) return "La traza no está activa";
+        on = false;
+        recording.stop();
+        return "Traza desactivada\n" + summary();
+    }
+
+    /**
+     * Vuelca lo grabado hasta ahora a un fichero .jfr (la grabación puede seguir activa).
+     */
+    public static synchronized String dump(Path file) {
+        if (recording == null) return "Error: No hay ninguna traza grabada";
+        try {
+            recording.dump(file);
+            return "Traza guardada en " + file.toAbsolutePath();
+        } catch (IOException e) {
+            return "Error: No se pudo guardar la traza: " + e.getMessage();
+        }
+    }
+
+    public static String summary() {
+        StringBuilder sb = new StringBuilder(String.format("%-14s%10s%12s%12s%12s%n",
+                "FASE", "N", "p50(ms)", "p99(ms)", "max(ms)"));
+        for (Phase p : Phase.values()) {
+            long[] v = samples.get(p).sorted();
+            if (v.length == 0) {
+                sb.append(String.format("%-14s%10d%12s%12s%12s%n", p.getLabel(), 0, "-", "-", "-"));
+                continue;
+            }
+            sb.append(String.format("%-14s%10d%12.3f%12.3f%12.3f%n", p.getLabel(), v.length,
+                    v[v.length / 2] / 1e6,
+                    v[Math.min(v.length - 1, (int) (v.length * 0.99))] / 1e6,
+                    v[v.length - 1] / 1e6));
+        }
+        return sb.toString();
+    }
+}
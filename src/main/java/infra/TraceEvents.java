@@ -0,0 +1,66 @@
+package infra;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Eventos JFR del intérprete. Todos llevan el PID (0 si aún no hay proceso)
+ * y el comando, y se activan con {@code trace on} o con cualquier grabación
+ * JFR externa que habilite la categoría "pspsh".
+ */
+public class TraceEvents {
+
+    @Category("pspsh")
+    public abstract static class PspshEvent extends Event {
+        @Label("PID")
+        public long pid;
+
+        @Label("Comando")
+        public String command;
+    }
+
+    @Name("pspsh.Command")
+    @Label("Comando")
+    @Description("Línea completa desde CommandController.handle hasta su resultado")
+    public static class CommandEvent extends PspshEvent {
+        @Label("Código de salida")
+        public int exitCode;
+    }
+
+    @Name("pspsh.Parse")
+    @Label("Análisis")
+    public static class ParseEvent extends PspshEvent { }
+
+    @Name("pspsh.Spawn")
+    @Label("ProcessBuilder.start")
+    public static class SpawnEvent extends PspshEvent { }
+
+    @Name("pspsh.FirstByte")
+    @Label("Primer byte de salida")
+    @Description("Desde que se conecta el gobbler hasta que lee el primer byte")
+    public static class FirstByteEvent extends PspshEvent { }
+
+    @Name("pspsh.Wait")
+    @Label("Espera del proceso")
+    public static class WaitEvent extends PspshEvent {
+        @Label("Terminado")
+        public boolean finished;
+    }
+
+    @Name("pspsh.Kill")
+    @Label("Terminación de proceso")
+    public static class KillEvent extends PspshEvent {
+        @Label("Motivo")
+        public String reason;
+
+        @Label("Forzado")
+        public boolean forced;
+    }
+
+    @Name("pspsh.HistoryWrite")
+    @Label("Escritura en el historial")
+    public static class HistoryWriteEvent extends PspshEvent { }
+}
@@ -0,0 +1,79 @@
+package parser;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Árbol de una línea de comandos ya analizada. Es inmutable, así que la misma
+ * instancia puede reutilizarse desde la caché del {@link Parser}.
+ *
+ * @param name       comando del intérprete (ejecuta, run, jobs...)
+ * @param args       todas las palabras tras el nombre, sin interpretar
+ * @param stages     etapas de la tubería sin palabras clave ni redirecciones;
+ *                   la primera no incluye el nombre del comando
+ * @param in         fichero de entrada (IN / &lt;) o null para heredar
+ * @param out        fichero de salida (OUT / &gt;) o null para heredar
+ * @param err        fichero de errores (ERR / 2&gt;) o null para heredar
+ * @param timeoutMs  TIMEOUT en ms o --timeout= en segundos, null si no se indica
+ * @param background la línea termina en &amp;
+ * @param pipefail   se indicó PIPEFAIL
+ * @param options    opciones del intérprete ({@code --prio=alta}...) con su valor,
+ *                   o cadena vacía si no llevan
+ */
+public record CommandLine(String name,
+                          List<String> args,
+                          List<List<Word>> stages,
+                          String in,
+                          String out,
+                          String err,
+                          Integer timeoutMs,
+                          boolean background,
+                          boolean pipefail,
+                          Map<String, String> options) {
+
+    public String option(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    public boolean hasOption(String key) {
+        return options.containsKey(key);
+    }
+
+    public boolean isEmpty() {
+        return name.isEmpty();
+    }
+
+    public boolean isPipeline() {
+        return stages.size() > 1;
+    }
+
+    public String[] argsArray() {
+        return args.isEmpty() ? null : args.toArray(new String[0]);
+    }
+
+    /**
+     * Texto de la etapa para pasarlo a la shell: las partes que venían entre
+     * comillas se vuelven a entrecomillar del mismo modo y el resto se deja
+     * tal cual para que la shell expanda variables, comodines, etc.
+     */
+    public String script(int stage) {
+        StringBuilder sb = new StringBuilder();
+        for (Word w : stages.get(stage)) {
+            if (!sb.isEmpty()) sb.append(' ');
+            sb.append(w.shell());
+        }
+        return sb.toString();
+    }
+
+    public List<String> scripts() {
+        return IntStream.range(0, stages.size()).mapToObj(this::script).toList();
+    }
+
+    /**
+     * Entrecomilla para la shell (comillas simples).
+     */
+    public static String quote(String s) {
+        return "'" + s.replace("'", "'\\''") + "'";
+    }
+}
@@ -0,0 +1,162 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Analizador léxico de una sola pasada. Reconoce comillas simples (literales),
+ * comillas dobles (con escapes \" \\ \$ \`), escapes con barra fuera de comillas
+ * y los operadores | < > 2> y &. Lo que solo entiende la shell (&&, ||, >>,
+ * 2>&1, >&2, &>, un & en medio de la línea) se deja como texto de la palabra
+ * para que llegue a bash tal cual.
+ */
+public class Lexer {
+    private final String line;
+    private final int n;
+    private final List<Token> tokens = new ArrayList<>();
+    private final StringBuilder word = new StringBuilder();
+    private final StringBuilder unquoted = new StringBuilder();
+    private final List<Word.Segment> segments = new ArrayList<>();
+    private boolean inWord;
+    private boolean quoted;
+
+    private Lexer(String line) {
+        this.line = line;
+        this.n = line.length();
+    }
+
+    public static List<Token> tokenize(String line) {
+        return new Lexer(line).run();
+    }
+
+    private List<Token> run() {
+        int i = 0;
+        while (i < n) {
+            char c = line.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                endWord();
+                i++;
+                continue;
+            }
+
+            switch (c) {
+                case '\'' -> {
+                    int close = line.indexOf('\'', i + 1);
+                    if (close < 0) throw new IllegalArgumentException("Comilla simple sin cerrar");
+                    addQuoted(line.substring(i + 1, close), line.substring(i + 1, close), Word.Quote.SINGLE);
+                    i = close + 1;
+                }
+                case '"' -> {
+                    int start = ++i;
+                    StringBuilder value = new StringBuilder();
+                    while (i < n && line.charAt(i) != '"') {
+                        char d = line.charAt(i);
+                        if (d == '\\' && i + 1 < n && "\"\\$`".indexOf(line.charAt(i + 1)) >= 0) {
+                            value.append(line.charAt(i + 1));
+                            i += 2;
+                        } else {
+                            value.append(d);
+                            i++;
+                        }
+                    }
+                    if (i >= n) throw new IllegalArgumentException("Comilla doble sin cerrar");
+                    addQuoted(value.toString(), line.substring(start, i), Word.Quote.DOUBLE);
+                    i++;
+                }
+                case '\\' -> {
+                    if (i + 1 < n) {
+                        String escaped = String.valueOf(line.charAt(i + 1));
+                        addQuoted(escaped, escaped, Word.Quote.SINGLE);
+                    }
+                    i += 2;
+                }
+                case '|' -> {
+                    if (at(i + 1, '|')) {
+                        i = addShellText(i, 2);
+                    } else {
+                        i = operator(i, Token.Type.PIPE, "|");
+                    }
+                }
+                case '<' -> i = at(i + 1, '<') ? addShellText(i, 2) : operator(i, Token.Type.IN, "<");
+                case '>' -> {
+                    if (at(i + 1, '>') || at(i + 1, '&')) {
+                        i = addShellText(i, 2);
+                    } else {
+                        i = operator(i, Token.Type.OUT, ">");
+                    }
+                }
+                case '&' -> {
+                    if (at(i + 1, '&')) {
+                        i = addShellText(i, 2);
+                    } else if (at(i + 1, '>')) {
+                        i = addShellText(i, at(i + 2, '>') ? 3 : 2);
+                    } else if (line.substring(i + 1).isBlank()) {
+                        // solo un & final lanza en background; en medio de la línea es de la shell
+                        i = operator(i, Token.Type.BACKGROUND, "&");
+                    } else {
+                        i = addShellText(i, 1);
+                    }
+                }
+                default -> {
+                    // "2>" solo es redirección de errores al principio de una palabra
+                    if (c == '2' && !inWord && at(i + 1, '>')) {
+                        if (at(i + 2, '>') || at(i + 2, '&')) {
+                            i = addShellText(i, 3);
+                        } else {
+                            tokens.add(new Token(Token.Type.ERR, "2>"));
+                            i += 2;
+                        }
+                    } else {
+                        i = addShellText(i, 1);
+                    }
+                }
+            }
+        }
+        endWord();
+        return tokens;
+    }
+
+    private boolean at(int i, char c) {
+        return i < n && line.charAt(i) == c;
+    }
+
+    // Texto sin comillas que pasa a la palabra tal cual
+    private int addShellText(int i, int len) {
+        String s = line.substring(i, i + len);
+        word.append(s);
+        unquoted.append(s);
+        inWord = true;
+        return i + len;
+    }
+
+    private void addQuoted(String value, String source, Word.Quote quote) {
+        flushUnquoted();
+        word.append(value);
+        segments.add(new Word.Segment(source, quote));
+        inWord = quoted = true;
+    }
+
+    private int operator(int i, Token.Type type, String text) {
+        endWord();
+        tokens.add(new Token(type, text));
+        return i + 1;
+    }
+
+    private void flushUnquoted() {
+        if (unquoted.isEmpty()) return;
+        segments.add(new Word.Segment(unquoted.toString(), Word.Quote.NONE));
+        unquoted.setLength(0);
+    }
+
+    private void endWord() {
+        if (inWord) {
+            flushUnquoted();
+            tokens.add(new Token(Token.Type.WORD, word.toString(), quoted, List.copyOf(segments)));
+        }
+        word.setLength(0);
+        unquoted.setLength(0);
+        segments.clear();
+        inWord = quoted = false;
+    }
+}
@@ -0,0 +1,175 @@
+package parser;
+
+import util.NumberParsing;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Construye un {@link CommandLine} a partir de los tokens del {@link Lexer}.
+ * Las palabras clave IN, OUT, ERR, TIMEOUT y PIPEFAIL solo se reconocen en
+ * mayúsculas y sin comillas.
+ */
+public class Parser {
+    private static final Set<String> KEYWORDS = Set.of("IN", "OUT", "ERR", "TIMEOUT");
+    private static final String PIPEFAIL = "PIPEFAIL";
+    private static final String TIMEOUT_FLAG = "--timeout=";
+    // Opciones --clave[=valor] que el intérprete consume y no llegan a la shell
+    private static final Set<String> OPTIONS = Set.of("--prio", "--nice", "--cache", "--cpu", "--mem", "--nofile", "--nproc");
+    // Solo estos comandos aceptan opciones, y solo antes del comando o tras un -- final
+    private static final Set<String> OPTION_COMMANDS = Set.of("runbg", "ejecuta", "pipe");
+    private static final String END_OF_COMMAND = "--";
+    private static final int CACHE_SIZE = 512;
+
+    private static final CommandLine EMPTY = new CommandLine("", List.of(), List.of(), null, null, null, null, false, false, Map.of());
+
+    // LRU por texto de entrada: las líneas repetidas (batch, !n) no se vuelven a analizar
+    private static final Map<String, CommandLine> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CommandLine> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public static CommandLine parseCached(String line) {
+        synchronized (cache) {
+            CommandLine cached = cache.get(line);
+            if (cached != null) return cached;
+        }
+        CommandLine parsed = parse(line);
+        synchronized (cache) {
+            cache.put(line, parsed);
+        }
+        return parsed;
+    }
+
+    public static CommandLine parse(String line) {
+        List<Token> tokens = Lexer.tokenize(line);
+        if (tokens.isEmpty()) return EMPTY;
+
+        String name = null;
+        List<String> args = new ArrayList<>();
+        List<List<Word>> stages = new ArrayList<>();
+        List<Word> current = new ArrayList<>();
+        String in = null, out = null, err = null;
+        Integer timeoutMs = null;
+        boolean background = false, pipefail = false;
+        Map<String, String> options = new LinkedHashMap<>();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Token t = tokens.get(i);
+            if (background) {
+                throw new IllegalArgumentException("& solo puede aparecer al final de la línea");
+            }
+
+            switch (t.type()) {
+                case WORD -> {
+                    if (name == null) {
+                        name = t.text();
+                        continue;
+                    }
+                    args.add(t.text());
+                    if (!t.quoted() && t.text().equals(PIPEFAIL)) {
+                        pipefail = true;
+                    } else if (!t.quoted() && KEYWORDS.contains(t.text())) {
+                        String value = valueOf(tokens, ++i, t.text());
+                        args.add(value);
+                        switch (t.text()) {
+                            case "IN" -> in = nullable(value);
+                            case "OUT" -> out = nullable(value);
+                            case "ERR" -> err = nullable(value);
+                            default -> timeoutMs = parseMillis(value);
+                        }
+                    } else if (!t.quoted() && t.text().startsWith(TIMEOUT_FLAG)) {
+                        timeoutMs = parseSeconds(t.text().substring(TIMEOUT_FLAG.length()));
+                    } else if (!t.quoted() && OPTION_COMMANDS.contains(name) && stages.isEmpty() && current.isEmpty()
+                            && isOption(t.text())) {
+                        putOption(options, t.text());
+                    } else {
+                        current.add(new Word(t.text(), t.quoted(), t.segments()));
+                    }
+                }
+                case PIPE -> {
+                    if (current.isEmpty()) throw new IllegalArgumentException("La tubería introducida no es válida");
+                    stages.add(List.copyOf(current));
+                    current = new ArrayList<>();
+                }
+                case IN -> in = valueOf(tokens, ++i, "<");
+                case OUT -> out = valueOf(tokens, ++i, ">");
+                case ERR -> err = valueOf(tokens, ++i, "2>");
+                case BACKGROUND -> background = true;
+            }
+        }
+
+        if (name == null) throw new IllegalArgumentException("Falta el nombre del comando");
+        if (OPTION_COMMANDS.contains(name)) takeTrailingOptions(current, options);
+        if (!current.isEmpty()) {
+            stages.add(List.copyOf(current));
+        } else if (!stages.isEmpty()) {
+            throw new IllegalArgumentException("La tubería introducida no es válida");
+        }
+
+        return new CommandLine(name, List.copyOf(args), List.copyOf(stages), in, out, err, timeoutMs, background, pipefail,
+                Map.copyOf(options));
+    }
+
+    /**
+     * {@code runbg prog args -- --prio=alta}: si tras el último -- solo hay
+     * opciones del intérprete, se consumen junto con el --. Si hay cualquier
+     * otra palabra, el -- es del programa ({@code git diff -- fichero}).
+     */
+    private static void takeTrailingOptions(List<Word> words, Map<String, String> options) {
+        int sep = -1;
+        for (int i = words.size() - 1; i >= 0; i--) {
+            Word w = words.get(i);
+            if (!w.quoted() && w.text().equals(END_OF_COMMAND)) {
+                sep = i;
+                break;
+            }
+        }
+        if (sep < 0 || sep == words.size() - 1) return;
+        List<Word> tail = words.subList(sep + 1, words.size());
+        if (!tail.stream().allMatch(w -> !w.quoted() && isOption(w.text()))) return;
+        tail.forEach(w -> putOption(options, w.text()));
+        words.subList(sep, words.size()).clear();
+    }
+
+    private static void putOption(Map<String, String> options, String word) {
+        int eq = word.indexOf('=');
+        options.put(eq < 0 ? word : word.substring(0, eq), eq < 0 ? "" : word.substring(eq + 1));
+    }
+
+    private static boolean isOption(String word) {
+        int eq = word.indexOf('=');
+        return OPTIONS.contains(eq < 0 ? word : word.substring(0, eq));
+    }
+
+    private static String valueOf(List<Token> tokens, int i, String keyword) {
+        if (i >= tokens.size() || tokens.get(i).type() != Token.Type.WORD) {
+            throw new IllegalArgumentException("Falta el valor de " + keyword);
+        }
+        return tokens.get(i).text();
+    }
+
+    private static String nullable(String value) {
+        return value.equalsIgnoreCase("null") ? null : value;
+    }
+
+    private static Integer parseMillis(String value) {
+        if (value.equalsIgnoreCase("null")) return null;
+        if (!NumberParsing.tryParseToInt(value)) {
+            throw new IllegalArgumentException("TIMEOUT debe ser un número entero de milisegundos");
+        }
+        return Integer.parseInt(value);
+    }
+
+    private static Integer parseSeconds(String value) {
+        if (!NumberParsing.tryParseToDouble(value)) {
+            throw new IllegalArgumentException("--timeout debe ser un número de segundos");
+        }
+        return (int) (Double.parseDouble(value) * 1000);
+    }
+}
@@ -0,0 +1,17 @@
+package parser;
+
+import java.util.List;
+
+/**
+ * Token producido por {@link Lexer}. {@code quoted} indica que el texto (o
+ * parte de él) venía entre comillas o escapado, de modo que no debe
+ * interpretarse como palabra clave ni expandirse en la shell. En las palabras,
+ * {@code segments} guarda cada parte con sus comillas originales.
+ */
+public record Token(Type type, String text, boolean quoted, List<Word.Segment> segments) {
+    public enum Type { WORD, PIPE, IN, OUT, ERR, BACKGROUND }
+
+    public Token(Type type, String text) {
+        this(type, text, false, List.of());
+    }
+}
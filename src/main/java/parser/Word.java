@@ -0,0 +1,44 @@
+package parser;
+
+import java.util.List;
+
+/**
+ * Palabra de una etapa. {@code text} es el valor ya sin comillas;
+ * {@code segments} conserva cómo venía entrecomillada cada parte para
+ * devolvérsela a la shell con el mismo significado.
+ */
+public record Word(String text, boolean quoted, List<Segment> segments) {
+
+    public enum Quote { NONE, SINGLE, DOUBLE }
+
+    /**
+     * @param source texto literal, o el contenido tal como se escribió entre
+     *               comillas dobles (con sus escapes) para que la shell lo
+     *               interprete igual: expande $ y `, respeta \" y \$
+     */
+    public record Segment(String source, Quote quote) {
+
+        public String shell() {
+            return switch (quote) {
+                case NONE -> source;
+                case SINGLE -> CommandLine.quote(source);
+                case DOUBLE -> '"' + source + '"';
+            };
+        }
+    }
+
+    public Word(String text, boolean quoted) {
+        this(text, quoted, List.of(new Segment(text, quoted ? Quote.SINGLE : Quote.NONE)));
+    }
+
+    /**
+     * Texto para la shell: cada parte con sus comillas originales, de modo que
+     * "$HOME" se sigue expandiendo y '$HOME' no.
+     */
+    public String shell() {
+        if (segments.size() == 1) return segments.getFirst().shell();
+        StringBuilder sb = new StringBuilder();
+        for (Segment s : segments) sb.append(s.shell());
+        return sb.toString();
+    }
+}
@@ -1,11 +1,34 @@
 package ui;
 
+import controller.BatchRunner;
 import controller.CommandController;
+import infra.ActivityLogger;
+import infra.JobJournal;
+import util.NumberParsing;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 public class App {
     public static void main(String[] args) {
+        if (args.length == 0 || !args[0].equals("--client")) {
+            ActivityLogger.start();
+            String recovered = JobJournal.recover();
+            if (!recovered.isEmpty()) System.out.println(recovered);
+        }
+
+        if (args.length > 0 && args[0].equals("--batch")) {
+            runBatch(args);
+            return;
+        }
+        if (args.length > 0 && (args[0].equals("--daemon") || args[0].equals("--client"))) {
+            runDaemonMode(args);
+            return;
+        }
+
         Scanner sc = new Scanner(System.in);
 
         String input = "";
@@ -20,4 +43,46 @@ public class App {
             System.out.println(resultado);
         }
     }
-}
\ No newline at end of file
+
+    // Modo no interactivo: lee los comandos de stdin y los ejecuta con BatchRunner
+    private static void runBatch(String[] args) {
+        int parallelism = 1;
+        if (args.length == 3 && args[1].equals("-j") && NumberParsing.tryParseToInt(args[2])) {
+            parallelism = Integer.parseInt(args[2]);
+        }
+
+        try {
+            BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+            System.out.println(new BatchRunner(parallelism).run(br));
+        } catch (IOException e) {
+            System.out.println("Error al leer stdin: " + e.getMessage());
+        }
+        System.exit(0);
+    }
+
+    /**
+     * {@code --daemon [--socket ruta]} arranca el servidor;
+     * {@code --client [--socket ruta] [--clients N]} se conecta a él.
+     */
+    private static void runDaemonMode(String[] args) {
+        Path socket = DaemonServer.defaultSocket();
+        int clients = 1;
+        for (int i = 1; i < args.length - 1; i++) {
+            if (args[i].equals("--socket")) socket = Path.of(args[++i]);
+            else if (args[i].equals("--clients") && NumberParsing.tryParseToInt(args[i + 1])) clients = Integer.parseInt(args[++i]);
+        }
+
+        if (args[0].equals("--daemon")) {
+            try {
+                DaemonServer.run(socket);
+            } catch (IOException e) {
+                System.out.println("Error en el daemon: " + e.getMessage());
+            }
+        } else if (clients > 1) {
+            DaemonClient.simulate(socket, clients);
+        } else {
+            DaemonClient.interactive(socket);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,136 @@
+package ui;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Cliente ligero del modo daemon. En modo interactivo reenvía cada línea al
+ * daemon; con varios clientes simulados ejecuta el mismo guion en paralelo y
+ * resume las latencias.
+ */
+public class DaemonClient {
+
+    private static class Connection implements AutoCloseable {
+        private final SocketChannel channel;
+        private final BufferedReader in;
+        private final PrintStream out;
+
+        Connection(Path socket) throws IOException {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+            in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            out = new PrintStream(Channels.newOutputStream(channel), true, StandardCharsets.UTF_8);
+        }
+
+        // Envía el comando y copia la respuesta en target hasta el separador
+        boolean send(String command, PrintStream target) throws IOException {
+            out.println(command);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.equals(DaemonServer.END_OF_RESPONSE)) return true;
+                if (target != null) target.println(line);
+            }
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    public static void interactive(Path socket) {
+        try (Connection conn = new Connection(socket);
+             BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in))) {
+            System.out.println("Conectado a " + socket);
+            String input;
+            while (true) {
+                System.out.print("pspsh>");
+                input = stdin.readLine();
+                if (input == null || input.trim().equalsIgnoreCase("exit")) break;
+                if (!conn.send(input.trim(), System.out)) {
+                    System.out.println("El daemon cerró la conexión");
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error al conectar con el daemon: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lanza {@code clients} sesiones simultáneas que ejecutan el guion leído de
+     * stdin y muestra el throughput y la latencia por comando.
+     */
+    public static void simulate(Path socket, int clients) {
+        List<String> script;
+        try {
+            script = new BufferedReader(new InputStreamReader(System.in)).lines()
+                    .map(String::trim)
+                    .filter(l -> !l.isEmpty() && !l.equalsIgnoreCase("exit"))
+                    .toList();
+        } catch (RuntimeException e) {
+            System.out.println("Error al leer el guion: " + e.getMessage());
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<Future<long[]>> results = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                results.add(pool.submit(() -> runScript(socket, script)));
+            }
+        }
+        long wallMillis = (System.nanoTime() - start) / 1_000_000;
+
+        List<Long> latencies = new ArrayList<>();
+        int failed = 0;
+        for (Future<long[]> f : results) {
+            try {
+                for (long l : f.get()) latencies.add(l);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                failed++;
+            }
+        }
+
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("Clientes: %d (fallidos: %d)  Comandos: %d  Tiempo: %d ms  Throughput: %.1f cmd/s%n",
+                clients, failed, sorted.length, wallMillis, sorted.length / (Math.max(wallMillis, 1) / 1000.0));
+        if (sorted.length > 0) {
+            System.out.printf("Latencia (ms): p50=%.2f p99=%.2f max=%.2f%n",
+                    sorted[sorted.length / 2] / 1e6,
+                    sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1e6,
+                    sorted[sorted.length - 1] / 1e6);
+        }
+    }
+
+    private static long[] runScript(Path socket, List<String> script) throws IOException {
+        long[] latencies = new long[script.size()];
+        try (Connection conn = new Connection(socket)) {
+            for (int i = 0; i < script.size(); i++) {
+                long t0 = System.nanoTime();
+                if (!conn.send(script.get(i), null)) {
+                    return Arrays.copyOf(latencies, i);
+                }
+                latencies[i] = System.nanoTime() - t0;
+            }
+        }
+        return latencies;
+    }
+}
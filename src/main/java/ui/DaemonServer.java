@@ -0,0 +1,85 @@
+package ui;
+
+import controller.CommandController;
+import infra.Session;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Modo daemon: escucha en un socket Unix y atiende cada cliente en su propio
+ * hilo virtual. Todas las sesiones comparten el mismo ProcessRegistry.
+ * Protocolo: el cliente envía una línea por comando y el servidor responde con
+ * la salida del comando seguida de una línea {@link #END_OF_RESPONSE}.
+ */
+public class DaemonServer {
+    public static final String END_OF_RESPONSE = "\u001E";
+
+    private static final AtomicInteger sessionIds = new AtomicInteger();
+    private static final AtomicInteger activeSessions = new AtomicInteger();
+
+    public static Path defaultSocket() {
+        return Path.of(System.getProperty("java.io.tmpdir"), "pspsh-" + System.getProperty("user.name") + ".sock");
+    }
+
+    public static int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    public static void run(Path socket) throws IOException {
+        // un socket que quedó de una ejecución anterior impide el bind
+        Files.deleteIfExists(socket);
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor()) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try { Files.deleteIfExists(socket); } catch (IOException ignored) {}
+            }, "daemon-socket-cleanup"));
+            System.out.println("Daemon escuchando en " + socket);
+
+            while (true) {
+                SocketChannel client = server.accept();
+                int id = sessionIds.incrementAndGet();
+                sessions.submit(() -> serve(client, id));
+            }
+        }
+    }
+
+    private static void serve(SocketChannel client, int id) {
+        activeSessions.incrementAndGet();
+        try (client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(Channels.newOutputStream(client), true, StandardCharsets.UTF_8)) {
+            Session.bind(new Session("s" + id, out, out, false));
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                // exit cierra la sesión, no el daemon
+                if (line.equalsIgnoreCase("exit")) break;
+
+                out.println(CommandController.handle(line));
+                out.println(END_OF_RESPONSE);
+            }
+        } catch (IOException ignored) {
+            // el cliente cerró la conexión
+        } finally {
+            Session.unbind();
+            activeSessions.decrementAndGet();
+        }
+    }
+}
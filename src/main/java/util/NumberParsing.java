@@ -10,6 +10,15 @@ public class NumberParsing {
         }
     }
 
+    public static boolean tryParseToLong(String number) {
+        try {
+            Long.parseLong(number);
+            return true;
+        }  catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
     public static boolean tryParseToDouble(String number) {
         try {
             Double.parseDouble(number);
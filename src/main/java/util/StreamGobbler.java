@@ -5,22 +5,79 @@ import java.nio.charset.StandardCharsets;
 import java.util.concurrent.*;
 
 public class StreamGobbler implements Callable<Void> {
+    // Tamaño del buffer en modo bytes: acota la memoria por flujo y, al escribir
+    // de forma bloqueante, el proceso hijo se frena cuando el destino no da abasto
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+    // Buffers reutilizables entre gobblers (los hilos virtuales no conservan ThreadLocals útiles)
+    private static final ConcurrentLinkedQueue<byte[]> BUFFERS = new ConcurrentLinkedQueue<>();
+
     private final InputStream input;
     private final PrintStream target;
+    private final OutputStream rawTarget;
     private volatile boolean running = true;
+    // Se avisa una vez, al leer el primer byte (lo usa la traza)
+    private volatile Runnable firstByteListener;
 
     public StreamGobbler(InputStream input, PrintStream target) {
         this.input = input;
         this.target = target;
+        this.rawTarget = null;
+    }
+
+    private StreamGobbler(InputStream input, OutputStream rawTarget) {
+        this.input = input;
+        this.target = null;
+        this.rawTarget = rawTarget;
+    }
+
+    /**
+     * Gobbler que copia bytes sin decodificar, reutilizando buffers de un pool compartido.
+     */
+    public static StreamGobbler raw(InputStream input, OutputStream target) {
+        return new StreamGobbler(input, target);
+    }
+
+    public StreamGobbler onFirstByte(Runnable listener) {
+        this.firstByteListener = listener;
+        return this;
+    }
+
+    private void firstByte() {
+        Runnable l = firstByteListener;
+        if (l != null) {
+            firstByteListener = null;
+            l.run();
+        }
     }
 
     public void stop() { running = false; try { input.close(); } catch (IOException ignored) {} }
 
+    /**
+     * Espera a que el gobbler consuma lo que queda en la tubería hasta el plazo
+     * indicado; si el flujo sigue abierto (p. ej. lo mantiene un descendiente) se cierra.
+     */
+    public void drain(Future<Void> future, long timeoutMs) {
+        try {
+            future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException ignored) {
+            stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop();
+        }
+    }
+
     @Override
     public Void call() {
+        if (rawTarget != null) {
+            copyBytes();
+            return null;
+        }
+
         try (BufferedReader br = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
             String line;
             while (running && (line = br.readLine()) != null) {
+                firstByte();
                 target.println(line);
             }
         } catch (IOException ignored) {
@@ -28,5 +85,23 @@ public class StreamGobbler implements Callable<Void> {
         }
         return null;
     }
-}
 
+    private void copyBytes() {
+        byte[] buffer = BUFFERS.poll();
+        if (buffer == null) buffer = new byte[DEFAULT_BUFFER_SIZE];
+        try (input) {
+            int n;
+            while (running && (n = input.read(buffer)) != -1) {
+                firstByte();
+                rawTarget.write(buffer, 0, n);
+                // se agrupan los flush mientras haya más datos disponibles
+                if (input.available() == 0) rawTarget.flush();
+            }
+            rawTarget.flush();
+        } catch (IOException ignored) {
+            // ocurre al cerrar el stream tras destroyForcibly
+        } finally {
+            BUFFERS.offer(buffer);
+        }
+    }
+}